@@ -34,13 +34,14 @@ import androidx.annotation.VisibleForTesting;
 
 import com.doctoror.particlesdrawable.contract.SceneConfiguration;
 import com.doctoror.particlesdrawable.contract.SceneController;
-import com.doctoror.particlesdrawable.contract.SceneRenderer;
 import com.doctoror.particlesdrawable.contract.SceneScheduler;
 import com.doctoror.particlesdrawable.engine.Engine;
 import com.doctoror.particlesdrawable.engine.SceneConfigurator;
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneSpec;
 import com.doctoror.particlesdrawable.renderer.CanvasSceneRenderer;
 import com.doctoror.particlesdrawable.renderer.DefaultSceneRenderer;
+import com.doctoror.particlesdrawable.util.LineSelector;
 
 /**
  * The Particles View.
@@ -69,7 +70,7 @@ public class ParticlesView extends View implements
     private final CanvasSceneRenderer canvasSceneRenderer = new CanvasSceneRenderer();
     private final Scene scene = new Scene();
     private final SceneConfigurator sceneConfigurator = new SceneConfigurator();
-    private final SceneRenderer renderer = new DefaultSceneRenderer(canvasSceneRenderer);
+    private final DefaultSceneRenderer renderer = new DefaultSceneRenderer(canvasSceneRenderer);
     private final Engine engine = new Engine(scene, this, renderer);
 
     /**
@@ -270,6 +271,67 @@ public class ParticlesView extends View implements
         return scene.getLineColor();
     }
 
+    /**
+     * Applies all values of the spec at once, with at most one particle buffer reallocation.
+     *
+     * @param spec the spec to apply
+     */
+    public void apply(@NonNull final SceneSpec spec) {
+        scene.apply(spec);
+    }
+
+    /**
+     * Limits the number of connection lines drawn per frame. When over budget, the shortest, most
+     * opaque lines are kept, so that a cluster of particles cannot blow the frame time. Unlimited
+     * by default.
+     *
+     * @param maxLines            the max number of lines per frame, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @param maxLinesPerParticle the max number of lines from and to a single particle, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setLineBudget(
+            @IntRange(from = 0) final int maxLines,
+            @IntRange(from = 0) final int maxLinesPerParticle) {
+        renderer.setLineBudget(maxLines, maxLinesPerParticle);
+    }
+
+    /**
+     * Sets how often particles are reordered along the Z-order curve, so that particles close in
+     * the scene are close in memory. Speeds up drawing connection lines with large particle
+     * counts. Disabled by default.
+     *
+     * @param frames the number of frames between reorders, or 0 to never reorder
+     * @throws IllegalArgumentException if frames is negative
+     */
+    public void setParticleReorderInterval(@IntRange(from = 0) final int frames) {
+        engine.setParticleReorderInterval(frames);
+    }
+
+    /**
+     * Enables or disables scaling the particle count with the view area, so that particles are
+     * spread equally and the cost of a frame per pixel stays the same on any screen size. While
+     * enabled, the density is recomputed on every size change, replacing the density set with
+     * {@link #setDensity(int)}. Disabled by default.
+     *
+     * @param particlesPerSquareDp the number of particles per square dp, or 0 to disable scaling
+     * @param minDensity           the min particle count
+     * @param maxDensity           the max particle count
+     * @throws IllegalArgumentException if any of the values is negative, or the max density is
+     *                                  less than the min density
+     */
+    public void setDensityScaling(
+            @FloatRange(from = 0) final float particlesPerSquareDp,
+            @IntRange(from = 0) final int minDensity,
+            @IntRange(from = 0) final int maxDensity) {
+        engine.setDensityScaling(
+                particlesPerSquareDp,
+                getResources().getDisplayMetrics().density,
+                minDensity,
+                maxDensity);
+    }
+
     @Override
     public void requestRender() {
         invalidate();
@@ -23,6 +23,8 @@ import com.doctoror.particlesdrawable.contract.SceneRenderer;
 import com.doctoror.particlesdrawable.contract.SceneScheduler;
 import com.doctoror.particlesdrawable.model.Scene;
 
+import androidx.annotation.FloatRange;
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
@@ -45,6 +47,20 @@ public final class Engine implements Animatable, Runnable, SceneController {
 
     private boolean particlesInited;
 
+    private boolean analyticMotion;
+
+    /**
+     * Particles per square dp of the scene area, or 0 if density is not scaled.
+     */
+    private float particlesPerSquareDp;
+    private float displayDensity;
+    private int minScaledDensity;
+    private int maxScaledDensity;
+
+    private final ParticleReorderer particleReorderer = new ParticleReorderer();
+    private int particleReorderInterval;
+    private int framesSinceReorder;
+
     private long lastFrameTime;
     private long lastDrawDuration;
 
@@ -88,6 +104,111 @@ public final class Engine implements Animatable, Runnable, SceneController {
         scheduler.scheduleNextFrame(Math.max(scene.getFrameDelay() - lastDrawDuration, 0L));
     }
 
+    /**
+     * Enables or disables analytic particle motion. When enabled, particle positions are derived
+     * from their spawn origin and spawn time, and particles are respawned when their analytically
+     * resolved exit time passes. Renderers may use {@link Scene#getMotionTime()} together with
+     * per-particle spawn data to move particles on the GPU.
+     * <p>
+     * Enabling rebases the current particle positions as the new origins.
+     *
+     * @param analyticMotion true to enable analytic particle motion
+     */
+    public void setAnalyticMotion(final boolean analyticMotion) {
+        if (this.analyticMotion != analyticMotion) {
+            this.analyticMotion = analyticMotion;
+            if (analyticMotion) {
+                scene.rebaseParticleMotion();
+            }
+        }
+    }
+
+    public boolean isAnalyticMotion() {
+        return analyticMotion;
+    }
+
+    /**
+     * Sets how often particles are reordered so that particles close in the scene are close in
+     * memory, which speeds up the particle pair loop of renderers for large particle counts.
+     * Reordering changes particle positions, so renderers that keep per-particle data must
+     * compare {@link Scene#getParticleSpawnGeneration(int)}.
+     *
+     * @param frames the number of frames between reorders, or 0 to never reorder
+     * @throws IllegalArgumentException if frames is negative
+     */
+    public void setParticleReorderInterval(@IntRange(from = 0) final int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames must not be negative");
+        }
+        particleReorderInterval = frames;
+        framesSinceReorder = 0;
+    }
+
+    public int getParticleReorderInterval() {
+        return particleReorderInterval;
+    }
+
+    /**
+     * Enables or disables scaling the particle count with the scene area, so that particles are
+     * spread equally and the cost of a frame per pixel stays the same on any screen size. While
+     * enabled, the density is recomputed on every dimensions change, replacing the density set to
+     * the scene.
+     *
+     * @param particlesPerSquareDp the number of particles per square dp, or 0 to disable scaling
+     * @param displayDensity       the logical display density, the number of pixels per dp
+     * @param minDensity           the min particle count
+     * @param maxDensity           the max particle count
+     * @throws IllegalArgumentException if any of the values is negative, display density is 0
+     *                                  or the max density is less than the min density
+     */
+    public void setDensityScaling(
+            @FloatRange(from = 0) final float particlesPerSquareDp,
+            final float displayDensity,
+            @IntRange(from = 0) final int minDensity,
+            @IntRange(from = 0) final int maxDensity) {
+        if (particlesPerSquareDp < 0f) {
+            throw new IllegalArgumentException("particlesPerSquareDp must not be negative");
+        }
+        if (displayDensity <= 0f) {
+            throw new IllegalArgumentException("displayDensity must be positive");
+        }
+        if (minDensity < 0) {
+            throw new IllegalArgumentException("minDensity must not be negative");
+        }
+        if (maxDensity < minDensity) {
+            throw new IllegalArgumentException("maxDensity must not be less than minDensity");
+        }
+        this.particlesPerSquareDp = particlesPerSquareDp;
+        this.displayDensity = displayDensity;
+        this.minScaledDensity = minDensity;
+        this.maxScaledDensity = maxDensity;
+
+        if (applyDensityScaling() && particlesInited) {
+            initParticles();
+        }
+    }
+
+    /**
+     * @return true if the scene density was changed
+     */
+    private boolean applyDensityScaling() {
+        final Scene scene = this.scene;
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        if (particlesPerSquareDp == 0f || width <= 0 || height <= 0) {
+            return false;
+        }
+        final float areaDp = (float) width * height / (displayDensity * displayDensity);
+        final int density = Math.min(
+                Math.max(Math.round(areaDp * particlesPerSquareDp), minScaledDensity),
+                maxScaledDensity);
+        if (scene.getDensity() == density) {
+            return false;
+        }
+        scene.setDensity(density);
+        return true;
+    }
+
     public void setAlpha(final int alpha) {
         scene.setAlpha(alpha);
     }
@@ -163,9 +284,13 @@ public final class Engine implements Animatable, Runnable, SceneController {
         scene.setWidth(width);
         scene.setHeight(height);
         if (width > 0 && height > 0) {
+            final boolean densityChanged = applyDensityScaling();
             if (!particlesInited) {
                 particlesInited = true;
                 initParticles();
+            } else if (densityChanged) {
+                // Particle buffers were reallocated
+                initParticles();
             }
         } else {
             if (particlesInited) {
@@ -215,7 +340,15 @@ public final class Engine implements Animatable, Runnable, SceneController {
     public void nextFrame() {
         final float step = lastFrameTime == 0 ? 1f
                 : (timeProvider.uptimeMillis() - lastFrameTime) * STEP_PER_MS;
-        frameAdvancer.advanceToNextFrame(scene, step);
+        if (analyticMotion) {
+            frameAdvancer.advanceToNextFrameAnalytically(scene, step);
+        } else {
+            frameAdvancer.advanceToNextFrame(scene, step);
+        }
+        if (particleReorderInterval != 0 && ++framesSinceReorder >= particleReorderInterval) {
+            framesSinceReorder = 0;
+            particleReorderer.reorder(scene);
+        }
         lastFrameTime = timeProvider.uptimeMillis();
     }
 
@@ -16,15 +16,31 @@
 package com.doctoror.particlesdrawable.engine;
 
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneChangeTracker;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
 final class FrameAdvancer {
 
+    /**
+     * The motion time after which particle motion is rebased to keep float precision of
+     * analytic positions.
+     */
+    @VisibleForTesting
+    static final float MOTION_TIME_REBASE_THRESHOLD = 65536f;
+
     @NonNull
     private final ParticleGenerator particleGenerator;
 
+    /**
+     * Tracks the inputs of particle exit times.
+     */
+    private final SceneChangeTracker boundsTracker = new SceneChangeTracker(
+            Scene.PROPERTY_PARTICLE_RADIUS_RANGE
+                    | Scene.PROPERTY_LINE_LENGTH
+                    | Scene.PROPERTY_DIMENSIONS);
+
     FrameAdvancer(@NonNull final ParticleGenerator particleGenerator) {
         this.particleGenerator = particleGenerator;
     }
@@ -54,6 +70,82 @@ final class FrameAdvancer {
         }
     }
 
+    /**
+     * Advances particles using analytic motion. Instead of integrating positions and checking
+     * bounds every frame, the exit time of each particle is calculated once after it is spawned,
+     * and only particles whose exit time has passed are respawned. Positions are still resolved
+     * for renderers that need them on the CPU, like lines.
+     */
+    void advanceToNextFrameAnalytically(
+            @NonNull final Scene scene,
+            final float step
+    ) {
+        if (scene.getMotionTime() > MOTION_TIME_REBASE_THRESHOLD) {
+            scene.rebaseParticleMotion();
+        }
+
+        final float time = scene.getMotionTime() + step * scene.getSpeedFactor();
+        scene.setMotionTime(time);
+
+        final float offset = scene.getParticleRadiusMin() + scene.getLineLength();
+        final boolean boundsChanged = boundsTracker.poll(scene);
+
+        final int particlesCount = scene.getDensity();
+        for (int i = 0; i < particlesCount; i++) {
+            float exitTime = scene.getParticleExitTime(i);
+            if (boundsChanged || Float.isNaN(exitTime)) {
+                exitTime = resolveExitTime(scene, i, offset);
+                scene.setParticleExitTime(i, exitTime);
+            }
+
+            if (time > exitTime) {
+                particleGenerator.applyFreshParticleOffScreen(scene, i);
+                scene.setParticleExitTime(i, resolveExitTime(scene, i, offset));
+            } else {
+                final float distance = (time - scene.getParticleSpawnTime(i))
+                        * scene.getParticleSpeedFactor(i);
+
+                scene.setParticleX(i, scene.getParticleOriginX(i)
+                        + distance * scene.getParticleDirectionCos(i));
+
+                scene.setParticleY(i, scene.getParticleOriginY(i)
+                        + distance * scene.getParticleDirectionSin(i));
+            }
+        }
+    }
+
+    /**
+     * Resolves the motion time at which the particle will be out of bounds as defined in
+     * {@link #particleOutOfBounds(Scene, float, float)}.
+     */
+    @VisibleForTesting
+    static float resolveExitTime(
+            @NonNull final Scene scene,
+            final int position,
+            final float offset) {
+        final float speedFactor = scene.getParticleSpeedFactor(position);
+        final float velocityX = speedFactor * scene.getParticleDirectionCos(position);
+        final float velocityY = speedFactor * scene.getParticleDirectionSin(position);
+
+        final float originX = scene.getParticleOriginX(position);
+        final float originY = scene.getParticleOriginY(position);
+
+        float elapsed = Float.POSITIVE_INFINITY;
+        if (velocityX > 0f) {
+            elapsed = (scene.getWidth() + offset - originX) / velocityX;
+        } else if (velocityX < 0f) {
+            elapsed = (-offset - originX) / velocityX;
+        }
+
+        if (velocityY > 0f) {
+            elapsed = Math.min(elapsed, (scene.getHeight() + offset - originY) / velocityY);
+        } else if (velocityY < 0f) {
+            elapsed = Math.min(elapsed, (-offset - originY) / velocityY);
+        }
+
+        return scene.getParticleSpawnTime(position) + elapsed;
+    }
+
     /**
      * Used for checking if the particle is off-screen and farther than line length and it's
      * radius.
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.engine;
+
+import com.doctoror.particlesdrawable.model.Scene;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Reorders particles along the Z-order (Morton) curve, so that particles close to each other in
+ * the scene are close in memory as well. Motion and respawns scatter particles over time, which
+ * makes the particle pair loop jump through memory.
+ */
+final class ParticleReorderer {
+
+    /**
+     * Bits per quantized coordinate. Keeps interleaved codes positive.
+     */
+    private static final int COORDINATE_BITS = 15;
+    private static final int MAX_COORDINATE = (1 << COORDINATE_BITS) - 1;
+
+    /**
+     * Morton code in the high half, particle position in the low half.
+     */
+    private long[] keys = new long[0];
+    private int[] order = new int[0];
+
+    void reorder(@NonNull final Scene scene) {
+        final int count = scene.getDensity();
+        if (count < 2 || scene.getWidth() == 0 || scene.getHeight() == 0) {
+            return;
+        }
+        if (keys.length < count) {
+            keys = new long[count];
+            order = new int[count];
+        }
+
+        // Particles live up to this far beyond the scene bounds
+        final float offset = scene.getParticleRadiusMax() + scene.getLineLength();
+        final float extent = Math.max(scene.getWidth(), scene.getHeight()) + offset * 2f;
+        final float scale = MAX_COORDINATE / extent;
+
+        for (int i = 0; i < count; i++) {
+            final int x = quantize((scene.getParticleX(i) + offset) * scale);
+            final int y = quantize((scene.getParticleY(i) + offset) * scale);
+            keys[i] = ((long) interleave(x, y) << 32) | i;
+        }
+        Arrays.sort(keys, 0, count);
+
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+            changed |= order[i] != i;
+        }
+        if (changed) {
+            scene.reorderParticles(order);
+        }
+    }
+
+    private static int quantize(final float value) {
+        if (value <= 0f) {
+            return 0;
+        }
+        if (value >= MAX_COORDINATE) {
+            return MAX_COORDINATE;
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return the Morton code of the coordinates, with bits of x at even positions
+     */
+    @VisibleForTesting
+    static int interleave(final int x, final int y) {
+        return spreadBits(x) | (spreadBits(y) << 1);
+    }
+
+    private static int spreadBits(int value) {
+        value = (value | (value << 8)) & 0x00FF00FF;
+        value = (value | (value << 4)) & 0x0F0F0F0F;
+        value = (value | (value << 2)) & 0x33333333;
+        value = (value | (value << 1)) & 0x55555555;
+        return value;
+    }
+}
@@ -20,6 +20,7 @@ import com.doctoror.particlesdrawable.KeepAsApi;
 import com.doctoror.particlesdrawable.contract.SceneConfiguration;
 
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.Locale;
 
 import androidx.annotation.ColorInt;
@@ -32,6 +33,29 @@ public final class Scene implements SceneConfiguration {
 
     private static final int COORDINATES_PER_VERTEX = 2;
 
+    public static final int PROPERTY_DENSITY = 1;
+    public static final int PROPERTY_FRAME_DELAY = 1 << 1;
+    public static final int PROPERTY_LINE_COLOR = 1 << 2;
+    public static final int PROPERTY_LINE_LENGTH = 1 << 3;
+    public static final int PROPERTY_LINE_THICKNESS = 1 << 4;
+    public static final int PROPERTY_PARTICLE_COLOR = 1 << 5;
+    public static final int PROPERTY_PARTICLE_RADIUS_RANGE = 1 << 6;
+    public static final int PROPERTY_SPEED_FACTOR = 1 << 7;
+    public static final int PROPERTY_ALPHA = 1 << 8;
+    public static final int PROPERTY_DIMENSIONS = 1 << 9;
+
+    private static final int PROPERTY_COUNT = 10;
+
+    /**
+     * Incremented on every property change.
+     */
+    private int version;
+
+    /**
+     * The version at which each property last changed, indexed by property bit position.
+     */
+    private final int[] propertyVersions = new int[PROPERTY_COUNT];
+
     // The alpha value of the scene
     private int alpha = 255;
 
@@ -68,6 +92,23 @@ public final class Scene implements SceneConfiguration {
     private FloatBuffer radiuses;
     private FloatBuffer speedFactors;
 
+    /*
+     * Analytic motion bookkeeping. Every particle moves linearly from its origin since its spawn
+     * time, so the position at any motion time can be computed without integrating frame by frame.
+     */
+    private float motionTime;
+
+    private FloatBuffer origins;
+    private FloatBuffer spawnTimes;
+    private FloatBuffer exitTimes;
+    private IntBuffer spawnGenerations;
+
+    /*
+     * Scratch arrays for reordering particles, allocated on first use.
+     */
+    private float[] reorderFloats;
+    private int[] reorderInts;
+
     public Scene() {
         initBuffers(density);
     }
@@ -83,11 +124,17 @@ public final class Scene implements SceneConfiguration {
     }
 
     public void setWidth(final int width) {
-        this.width = width;
+        if (this.width != width) {
+            this.width = width;
+            markChanged(PROPERTY_DIMENSIONS);
+        }
     }
 
     public void setHeight(final int height) {
-        this.height = height;
+        if (this.height != height) {
+            this.height = height;
+            markChanged(PROPERTY_DIMENSIONS);
+        }
     }
 
     public int getWidth() {
@@ -114,6 +161,179 @@ public final class Scene implements SceneConfiguration {
 
         radiuses.put(position, radius);
         speedFactors.put(position, speedFactor);
+
+        origins.put(position * 2, x);
+        origins.put(position * 2 + 1, y);
+        spawnTimes.put(position, motionTime);
+        exitTimes.put(position, Float.NaN);
+        spawnGenerations.put(position, spawnGenerations.get(position) + 1);
+    }
+
+    /**
+     * Returns the motion time, which is the distance travelled by a particle with individual speed
+     * factor of 1 since the last rebase. Particle positions in analytic motion mode are
+     * origin + (motionTime - spawnTime) * particleSpeedFactor * direction.
+     */
+    public float getMotionTime() {
+        return motionTime;
+    }
+
+    public void setMotionTime(final float motionTime) {
+        this.motionTime = motionTime;
+    }
+
+    public float getParticleOriginX(final int position) {
+        return origins.get(position * 2);
+    }
+
+    public float getParticleOriginY(final int position) {
+        return origins.get(position * 2 + 1);
+    }
+
+    /**
+     * Returns the motion time at which the particle was spawned.
+     *
+     * @see #getMotionTime()
+     */
+    public float getParticleSpawnTime(final int position) {
+        return spawnTimes.get(position);
+    }
+
+    /**
+     * Returns the motion time at which the particle leaves the scene bounds, or {@link Float#NaN}
+     * if it was not resolved since the particle was spawned.
+     *
+     * @see #getMotionTime()
+     */
+    public float getParticleExitTime(final int position) {
+        return exitTimes.get(position);
+    }
+
+    public void setParticleExitTime(final int position, final float exitTime) {
+        exitTimes.put(position, exitTime);
+    }
+
+    /**
+     * Returns the counter that is incremented every time the particle at this position is
+     * respawned or rebased. Renderers that keep their own copy of spawn data may compare it to
+     * know which particles have to be uploaded again.
+     */
+    public int getParticleSpawnGeneration(final int position) {
+        return spawnGenerations.get(position);
+    }
+
+    /**
+     * Makes current particle coordinates the new origins, and resets motion time and spawn times
+     * to 0. Exit times are invalidated. Used to keep analytic motion precise once the motion time
+     * grows large, and to start analytic motion from the current state.
+     */
+    public void rebaseParticleMotion() {
+        motionTime = 0f;
+        for (int i = 0; i < density; i++) {
+            origins.put(i * 2, getParticleX(i));
+            origins.put(i * 2 + 1, getParticleY(i));
+            spawnTimes.put(i, 0f);
+            exitTimes.put(i, Float.NaN);
+            spawnGenerations.put(i, spawnGenerations.get(i) + 1);
+        }
+    }
+
+    /**
+     * Moves particles to new positions, so that the particle at {@code order[i]} becomes the
+     * particle at {@code i}. Used to keep particles that are close in the scene close in memory.
+     * <p>
+     * The spawn generation of every position that receives another particle is incremented past
+     * both previous generations, so renderers that keep their own copy of spawn data upload it
+     * again.
+     *
+     * @param order a permutation of particle positions, at least {@link #getDensity()} long
+     */
+    public void reorderParticles(@NonNull final int[] order) {
+        final int density = this.density;
+        if (reorderFloats == null || reorderFloats.length < density * 2) {
+            reorderFloats = new float[density * 2];
+            reorderInts = new int[density];
+        }
+
+        reorder(coordinates.array(), COORDINATES_PER_VERTEX, order);
+        reorder(directions.array(), 2, order);
+        reorder(radiuses.array(), 1, order);
+        reorder(speedFactors.array(), 1, order);
+        reorder(origins.array(), COORDINATES_PER_VERTEX, order);
+        reorder(spawnTimes.array(), 1, order);
+        reorder(exitTimes.array(), 1, order);
+
+        final int[] generations = spawnGenerations.array();
+        System.arraycopy(generations, 0, reorderInts, 0, density);
+        for (int i = 0; i < density; i++) {
+            final int source = order[i];
+            if (source != i) {
+                generations[i] = Math.max(reorderInts[i], reorderInts[source]) + 1;
+            }
+        }
+    }
+
+    private void reorder(
+            @NonNull final float[] values,
+            final int valuesPerParticle,
+            @NonNull final int[] order) {
+        final int count = density * valuesPerParticle;
+        System.arraycopy(values, 0, reorderFloats, 0, count);
+        for (int i = 0; i < density; i++) {
+            final int source = order[i] * valuesPerParticle;
+            final int target = i * valuesPerParticle;
+            for (int v = 0; v < valuesPerParticle; v++) {
+                values[target + v] = reorderFloats[source + v];
+            }
+        }
+    }
+
+    /**
+     * Copies configuration, dimensions and particle state of the source scene into this one. Used
+     * to take a snapshot that can be drawn while the source scene advances on another thread.
+     * Property versions are copied as well, so a {@link SceneChangeTracker} sees the snapshot as
+     * the source scene.
+     *
+     * @param source the scene to copy from
+     */
+    public void copyStateFrom(@NonNull final Scene source) {
+        alpha = source.alpha;
+        frameDelay = source.frameDelay;
+        lineColor = source.lineColor;
+        lineLength = source.lineLength;
+        lineThickness = source.lineThickness;
+        particleColor = source.particleColor;
+        particleRadiusMax = source.particleRadiusMax;
+        particleRadiusMin = source.particleRadiusMin;
+        speedFactor = source.speedFactor;
+        width = source.width;
+        height = source.height;
+        motionTime = source.motionTime;
+        version = source.version;
+        System.arraycopy(source.propertyVersions, 0, propertyVersions, 0, PROPERTY_COUNT);
+
+        if (density != source.density) {
+            density = source.density;
+            initBuffers(density);
+        }
+
+        copyBuffer(source.coordinates, coordinates);
+        copyBuffer(source.directions, directions);
+        copyBuffer(source.radiuses, radiuses);
+        copyBuffer(source.speedFactors, speedFactors);
+        copyBuffer(source.origins, origins);
+        copyBuffer(source.spawnTimes, spawnTimes);
+        copyBuffer(source.exitTimes, exitTimes);
+        System.arraycopy(
+                source.spawnGenerations.array(), 0,
+                spawnGenerations.array(), 0,
+                spawnGenerations.capacity());
+    }
+
+    private static void copyBuffer(
+            @NonNull final FloatBuffer source,
+            @NonNull final FloatBuffer destination) {
+        System.arraycopy(source.array(), 0, destination.array(), 0, destination.capacity());
     }
 
     public float getParticleX(final int position) {
@@ -153,7 +373,44 @@ public final class Scene implements SceneConfiguration {
     }
 
     public void setAlpha(final int alpha) {
-        this.alpha = alpha;
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            markChanged(PROPERTY_ALPHA);
+        }
+    }
+
+    /**
+     * Returns the version of this scene's properties, which changes whenever a property value
+     * changes. Pass it to {@link #getChangedProperties(int)} later to find out what changed in
+     * between.
+     *
+     * @return the current version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the properties that changed after the version was obtained from
+     * {@link #getVersion()}. Particle data is not a property and is not tracked.
+     *
+     * @param sinceVersion the version obtained earlier
+     * @return a mask of the {@code PROPERTY_} constants that changed
+     * @see SceneChangeTracker
+     */
+    public int getChangedProperties(final int sinceVersion) {
+        int changed = 0;
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            if (propertyVersions[i] > sinceVersion) {
+                changed |= 1 << i;
+            }
+        }
+        return changed;
+    }
+
+    private void markChanged(final int property) {
+        version++;
+        propertyVersions[Integer.numberOfTrailingZeros(property)] = version;
     }
 
     @IntRange(from = 0, to = 255)
@@ -166,6 +423,7 @@ public final class Scene implements SceneConfiguration {
         initDirections(density);
         initSpeedFactors(density);
         initRadiuses(density);
+        initMotionBookkeeping(density);
     }
 
     private void initCoordinates(final int density) {
@@ -194,6 +452,22 @@ public final class Scene implements SceneConfiguration {
         }
     }
 
+    private void initMotionBookkeeping(final int density) {
+        final int originsCapacity = density * COORDINATES_PER_VERTEX;
+        if (origins == null || origins.capacity() != originsCapacity) {
+            origins = FloatBuffer.allocate(originsCapacity);
+        }
+        if (spawnTimes == null || spawnTimes.capacity() != density) {
+            spawnTimes = FloatBuffer.allocate(density);
+        }
+        if (exitTimes == null || exitTimes.capacity() != density) {
+            exitTimes = FloatBuffer.allocate(density);
+        }
+        if (spawnGenerations == null || spawnGenerations.capacity() != density) {
+            spawnGenerations = IntBuffer.allocate(density);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -207,12 +481,11 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setDensity(@IntRange(from = 0) final int density) {
-        if (density < 0) {
-            throw new IllegalArgumentException("Density must not be negative");
-        }
+        checkDensity(density);
         if (this.density != density) {
             this.density = density;
             initBuffers(density);
+            markChanged(PROPERTY_DENSITY);
         }
     }
 
@@ -229,10 +502,11 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setFrameDelay(@IntRange(from = 0) final int delay) {
-        if (delay < 0) {
-            throw new IllegalArgumentException("delay must not be nagative");
+        checkFrameDelay(delay);
+        if (frameDelay != delay) {
+            frameDelay = delay;
+            markChanged(PROPERTY_FRAME_DELAY);
         }
-        frameDelay = delay;
     }
 
     /**
@@ -248,7 +522,10 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setLineColor(@ColorInt final int lineColor) {
-        this.lineColor = lineColor;
+        if (this.lineColor != lineColor) {
+            this.lineColor = lineColor;
+            markChanged(PROPERTY_LINE_COLOR);
+        }
     }
 
     /**
@@ -272,13 +549,11 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setLineThickness(@FloatRange(from = 1) final float lineThickness) {
-        if (lineThickness < 1) {
-            throw new IllegalArgumentException("Line thickness must not be less than 1");
+        checkLineThickness(lineThickness);
+        if (this.lineThickness != lineThickness) {
+            this.lineThickness = lineThickness;
+            markChanged(PROPERTY_LINE_THICKNESS);
         }
-        if (Float.compare(lineThickness, Float.NaN) == 0) {
-            throw new IllegalArgumentException("line thickness must be a valid float");
-        }
-        this.lineThickness = lineThickness;
     }
 
     /**
@@ -286,13 +561,11 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setLineLength(@FloatRange(from = 0) final float lineLength) {
-        if (lineLength < 0) {
-            throw new IllegalArgumentException("line length must not be negative");
+        checkLineLength(lineLength);
+        if (this.lineLength != lineLength) {
+            this.lineLength = lineLength;
+            markChanged(PROPERTY_LINE_LENGTH);
         }
-        if (Float.compare(lineLength, Float.NaN) == 0) {
-            throw new IllegalArgumentException("line length must be a valid float");
-        }
-        this.lineLength = lineLength;
     }
 
 
@@ -309,7 +582,10 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setParticleColor(@ColorInt final int color) {
-        particleColor = color;
+        if (particleColor != color) {
+            particleColor = color;
+            markChanged(PROPERTY_PARTICLE_COLOR);
+        }
     }
 
     /**
@@ -335,20 +611,12 @@ public final class Scene implements SceneConfiguration {
     public void setParticleRadiusRange(
             @FloatRange(from = 0.5f) final float minRadius,
             @FloatRange(from = 0.5f) final float maxRadius) {
-        if (minRadius < 0.5f || maxRadius < 0.5f) {
-            throw new IllegalArgumentException("Particle radius must not be less than 0.5");
-        }
-        if (Float.compare(minRadius, Float.NaN) == 0
-                || Float.compare(maxRadius, Float.NaN) == 0) {
-            throw new IllegalArgumentException("Particle radius must be a valid float");
-        }
-        if (minRadius > maxRadius) {
-            throw new IllegalArgumentException(String.format(Locale.US,
-                    "Min radius must not be greater than max, but min = %f, max = %f",
-                    minRadius, maxRadius));
+        checkParticleRadiusRange(minRadius, maxRadius);
+        if (particleRadiusMin != minRadius || particleRadiusMax != maxRadius) {
+            particleRadiusMin = minRadius;
+            particleRadiusMax = maxRadius;
+            markChanged(PROPERTY_PARTICLE_RADIUS_RANGE);
         }
-        particleRadiusMin = minRadius;
-        particleRadiusMax = maxRadius;
     }
 
     /**
@@ -364,12 +632,108 @@ public final class Scene implements SceneConfiguration {
      */
     @Override
     public void setSpeedFactor(@FloatRange(from = 0) final float speedFactor) {
+        checkSpeedFactor(speedFactor);
+        if (this.speedFactor != speedFactor) {
+            this.speedFactor = speedFactor;
+            markChanged(PROPERTY_SPEED_FACTOR);
+        }
+    }
+
+    /**
+     * Applies all values of the spec at once. The spec is validated when built, so the values
+     * are not validated again, and particle buffers are reallocated at most once.
+     *
+     * @param spec the spec to apply
+     */
+    public void apply(@NonNull final SceneSpec spec) {
+        if (density != spec.getDensity()) {
+            density = spec.getDensity();
+            initBuffers(density);
+            markChanged(PROPERTY_DENSITY);
+        }
+        if (frameDelay != spec.getFrameDelay()) {
+            frameDelay = spec.getFrameDelay();
+            markChanged(PROPERTY_FRAME_DELAY);
+        }
+        if (lineColor != spec.getLineColor()) {
+            lineColor = spec.getLineColor();
+            markChanged(PROPERTY_LINE_COLOR);
+        }
+        if (lineLength != spec.getLineLength()) {
+            lineLength = spec.getLineLength();
+            markChanged(PROPERTY_LINE_LENGTH);
+        }
+        if (lineThickness != spec.getLineThickness()) {
+            lineThickness = spec.getLineThickness();
+            markChanged(PROPERTY_LINE_THICKNESS);
+        }
+        if (particleColor != spec.getParticleColor()) {
+            particleColor = spec.getParticleColor();
+            markChanged(PROPERTY_PARTICLE_COLOR);
+        }
+        if (particleRadiusMin != spec.getParticleRadiusMin()
+                || particleRadiusMax != spec.getParticleRadiusMax()) {
+            particleRadiusMin = spec.getParticleRadiusMin();
+            particleRadiusMax = spec.getParticleRadiusMax();
+            markChanged(PROPERTY_PARTICLE_RADIUS_RANGE);
+        }
+        if (speedFactor != spec.getSpeedFactor()) {
+            speedFactor = spec.getSpeedFactor();
+            markChanged(PROPERTY_SPEED_FACTOR);
+        }
+    }
+
+    static void checkDensity(final int density) {
+        if (density < 0) {
+            throw new IllegalArgumentException("Density must not be negative");
+        }
+    }
+
+    static void checkFrameDelay(final int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must not be nagative");
+        }
+    }
+
+    static void checkLineThickness(final float lineThickness) {
+        if (lineThickness < 1) {
+            throw new IllegalArgumentException("Line thickness must not be less than 1");
+        }
+        if (Float.compare(lineThickness, Float.NaN) == 0) {
+            throw new IllegalArgumentException("line thickness must be a valid float");
+        }
+    }
+
+    static void checkLineLength(final float lineLength) {
+        if (lineLength < 0) {
+            throw new IllegalArgumentException("line length must not be negative");
+        }
+        if (Float.compare(lineLength, Float.NaN) == 0) {
+            throw new IllegalArgumentException("line length must be a valid float");
+        }
+    }
+
+    static void checkParticleRadiusRange(final float minRadius, final float maxRadius) {
+        if (minRadius < 0.5f || maxRadius < 0.5f) {
+            throw new IllegalArgumentException("Particle radius must not be less than 0.5");
+        }
+        if (Float.compare(minRadius, Float.NaN) == 0
+                || Float.compare(maxRadius, Float.NaN) == 0) {
+            throw new IllegalArgumentException("Particle radius must be a valid float");
+        }
+        if (minRadius > maxRadius) {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Min radius must not be greater than max, but min = %f, max = %f",
+                    minRadius, maxRadius));
+        }
+    }
+
+    static void checkSpeedFactor(final float speedFactor) {
         if (speedFactor < 0) {
             throw new IllegalArgumentException("speedFactor must not be nagative");
         }
         if (Float.compare(speedFactor, Float.NaN) == 0) {
             throw new IllegalArgumentException("speedFactor must be a valid float");
         }
-        this.speedFactor = speedFactor;
     }
 }
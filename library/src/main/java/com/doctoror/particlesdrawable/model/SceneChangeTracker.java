@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.model;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Tells whether any of the tracked {@link Scene} properties changed since the last poll, so that
+ * values derived from them can be cached and rebuilt only when needed.
+ * <p>
+ * A tracker must poll a single scene, or copies of it made with
+ * {@link Scene#copyStateFrom(Scene)}, because versions of unrelated scenes are not comparable.
+ */
+@KeepAsApi
+public final class SceneChangeTracker {
+
+    private final int properties;
+
+    private boolean polled;
+    private int version;
+
+    /**
+     * @param properties a mask of the {@code Scene.PROPERTY_} constants to track
+     */
+    public SceneChangeTracker(final int properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @param scene the scene to check
+     * @return true if this is the first poll, or a tracked property changed since the last one
+     */
+    public boolean poll(@NonNull final Scene scene) {
+        final int currentVersion = scene.getVersion();
+        if (polled && currentVersion == version) {
+            return false;
+        }
+        final boolean changed = !polled
+                || (scene.getChangedProperties(version) & properties) != 0;
+        polled = true;
+        version = currentVersion;
+        return changed;
+    }
+
+    /**
+     * Makes the next {@link #poll(Scene)} report a change, for example after the derived values
+     * were lost.
+     */
+    public void reset() {
+        polled = false;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.model;
+
+import com.doctoror.particlesdrawable.Defaults;
+import com.doctoror.particlesdrawable.KeepAsApi;
+import com.doctoror.particlesdrawable.contract.SceneConfiguration;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.FloatRange;
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+/**
+ * An immutable set of all {@link SceneConfiguration} values, validated once when built. Apply it
+ * with {@code apply(SceneSpec)} to change many values at once, for example on theme change, with
+ * at most one buffer reallocation and, on OpenGL, a single rendering thread event.
+ */
+@KeepAsApi
+public final class SceneSpec {
+
+    private final int density;
+    private final int frameDelay;
+
+    @ColorInt
+    private final int lineColor;
+
+    private final float lineLength;
+    private final float lineThickness;
+
+    @ColorInt
+    private final int particleColor;
+
+    private final float particleRadiusMin;
+    private final float particleRadiusMax;
+    private final float speedFactor;
+
+    private SceneSpec(@NonNull final Builder builder) {
+        density = builder.density;
+        frameDelay = builder.frameDelay;
+        lineColor = builder.lineColor;
+        lineLength = builder.lineLength;
+        lineThickness = builder.lineThickness;
+        particleColor = builder.particleColor;
+        particleRadiusMin = builder.particleRadiusMin;
+        particleRadiusMax = builder.particleRadiusMax;
+        speedFactor = builder.speedFactor;
+    }
+
+    public int getDensity() {
+        return density;
+    }
+
+    public int getFrameDelay() {
+        return frameDelay;
+    }
+
+    @ColorInt
+    public int getLineColor() {
+        return lineColor;
+    }
+
+    public float getLineLength() {
+        return lineLength;
+    }
+
+    public float getLineThickness() {
+        return lineThickness;
+    }
+
+    @ColorInt
+    public int getParticleColor() {
+        return particleColor;
+    }
+
+    public float getParticleRadiusMin() {
+        return particleRadiusMin;
+    }
+
+    public float getParticleRadiusMax() {
+        return particleRadiusMax;
+    }
+
+    public float getSpeedFactor() {
+        return speedFactor;
+    }
+
+    @KeepAsApi
+    public static final class Builder {
+
+        private int density = Defaults.DENSITY;
+        private int frameDelay = Defaults.FRAME_DELAY;
+
+        @ColorInt
+        private int lineColor = Defaults.LINE_COLOR;
+
+        private float lineLength = Defaults.LINE_LENGTH;
+        private float lineThickness = Defaults.LINE_THICKNESS;
+
+        @ColorInt
+        private int particleColor = Defaults.PARTICLE_COLOR;
+
+        private float particleRadiusMin = Defaults.PARTICLE_RADIUS_MIN;
+        private float particleRadiusMax = Defaults.PARTICLE_RADIUS_MAX;
+        private float speedFactor = Defaults.SPEED_FACTOR;
+
+        /**
+         * Creates a builder with default values.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Creates a builder with the current values of the configuration, so that only the
+         * values that change need to be set.
+         *
+         * @param configuration the configuration to copy the values from
+         */
+        public Builder(@NonNull final SceneConfiguration configuration) {
+            density = configuration.getDensity();
+            frameDelay = configuration.getFrameDelay();
+            lineColor = configuration.getLineColor();
+            lineLength = configuration.getLineLength();
+            lineThickness = configuration.getLineThickness();
+            particleColor = configuration.getParticleColor();
+            particleRadiusMin = configuration.getParticleRadiusMin();
+            particleRadiusMax = configuration.getParticleRadiusMax();
+            speedFactor = configuration.getSpeedFactor();
+        }
+
+        @NonNull
+        public Builder setDensity(@IntRange(from = 0) final int density) {
+            this.density = density;
+            return this;
+        }
+
+        @NonNull
+        public Builder setFrameDelay(@IntRange(from = 0) final int frameDelay) {
+            this.frameDelay = frameDelay;
+            return this;
+        }
+
+        @NonNull
+        public Builder setLineColor(@ColorInt final int lineColor) {
+            this.lineColor = lineColor;
+            return this;
+        }
+
+        @NonNull
+        public Builder setLineLength(@FloatRange(from = 0) final float lineLength) {
+            this.lineLength = lineLength;
+            return this;
+        }
+
+        @NonNull
+        public Builder setLineThickness(@FloatRange(from = 1) final float lineThickness) {
+            this.lineThickness = lineThickness;
+            return this;
+        }
+
+        @NonNull
+        public Builder setParticleColor(@ColorInt final int particleColor) {
+            this.particleColor = particleColor;
+            return this;
+        }
+
+        @NonNull
+        public Builder setParticleRadiusRange(
+                @FloatRange(from = 0.5f) final float minRadius,
+                @FloatRange(from = 0.5f) final float maxRadius) {
+            this.particleRadiusMin = minRadius;
+            this.particleRadiusMax = maxRadius;
+            return this;
+        }
+
+        @NonNull
+        public Builder setSpeedFactor(@FloatRange(from = 0) final float speedFactor) {
+            this.speedFactor = speedFactor;
+            return this;
+        }
+
+        /**
+         * @return the spec with the values of this builder
+         * @throws IllegalArgumentException if any value is not accepted by the corresponding
+         *                                  {@link SceneConfiguration} setter
+         */
+        @NonNull
+        public SceneSpec build() {
+            Scene.checkDensity(density);
+            Scene.checkFrameDelay(frameDelay);
+            Scene.checkLineLength(lineLength);
+            Scene.checkLineThickness(lineThickness);
+            Scene.checkParticleRadiusRange(particleRadiusMin, particleRadiusMax);
+            Scene.checkSpeedFactor(speedFactor);
+            return new SceneSpec(this);
+        }
+    }
+}
@@ -17,14 +17,18 @@ package com.doctoror.particlesdrawable.renderer;
 
 import com.doctoror.particlesdrawable.KeepAsApi;
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneChangeTracker;
 import com.doctoror.particlesdrawable.contract.LowLevelRenderer;
 import com.doctoror.particlesdrawable.contract.SceneRenderer;
 import com.doctoror.particlesdrawable.util.DistanceResolver;
-import com.doctoror.particlesdrawable.util.LineColorResolver;
+import com.doctoror.particlesdrawable.util.LineColorTable;
+import com.doctoror.particlesdrawable.util.LineSelector;
 import com.doctoror.particlesdrawable.util.ParticleColorResolver;
+import com.doctoror.particlesdrawable.util.ViewportCuller;
 
 import java.nio.FloatBuffer;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 
 @KeepAsApi
@@ -32,18 +36,56 @@ public class DefaultSceneRenderer implements SceneRenderer {
 
     private final LowLevelRenderer renderer;
 
+    private final SceneChangeTracker particleColorTracker = new SceneChangeTracker(
+            Scene.PROPERTY_PARTICLE_COLOR | Scene.PROPERTY_ALPHA);
+
+    private int particleColor;
+
+    private final LineColorTable lineColorTable = new LineColorTable();
+
+    private final ViewportCuller viewportCuller = new ViewportCuller();
+
+    private final LineSelector lineSelector = new LineSelector();
+
     public DefaultSceneRenderer(@NonNull final LowLevelRenderer renderer) {
         this.renderer = renderer;
     }
 
+    /**
+     * Limits the number of connection lines drawn per frame. When over budget, the shortest
+     * lines are kept. Lines are drawn below all particles while limited.
+     *
+     * @param maxLines            the max number of lines per frame, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @param maxLinesPerParticle the max number of lines from and to a single particle, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setLineBudget(
+            @IntRange(from = 0) final int maxLines,
+            @IntRange(from = 0) final int maxLinesPerParticle) {
+        lineSelector.setLimits(maxLines, maxLinesPerParticle);
+    }
+
     @Override
     public void drawScene(@NonNull final Scene scene) {
         if (scene.getDensity() > 0) {
 
-            final int particleColor = ParticleColorResolver.resolveParticleColorWithSceneAlpha(
-                    scene.getParticleColor(),
-                    scene.getAlpha()
-            );
+            if (particleColorTracker.poll(scene)) {
+                particleColor = ParticleColorResolver.resolveParticleColorWithSceneAlpha(
+                        scene.getParticleColor(),
+                        scene.getAlpha()
+                );
+            }
+
+            lineColorTable.update(scene);
+            final float maxDistanceSquared = lineColorTable.getMaxDistanceSquared();
+            viewportCuller.update(scene, 0f);
+            final float lineThickness = scene.getLineThickness();
+            final boolean linesLimited = lineSelector.isLimited();
+            if (linesLimited) {
+                drawSelectedLines(scene, lineThickness);
+            }
 
             final FloatBuffer radiuses = scene.getRadiuses();
             final int particlesCount = scene.getDensity();
@@ -53,33 +95,48 @@ public class DefaultSceneRenderer implements SceneRenderer {
                 final float y1 = scene.getParticleY(i);
 
                 // Draw connection lines for eligible particles
-                for (int j = i + 1; j < particlesCount; j++) {
+                for (int j = i + 1; j < particlesCount && !linesLimited; j++) {
 
                     final float x2 = scene.getParticleX(j);
                     final float y2 = scene.getParticleY(j);
 
-                    final float distance = DistanceResolver.distance(x1, y1, x2, y2);
-                    if (distance < scene.getLineLength()) {
+                    final float distanceSquared = DistanceResolver.distanceSquared(x1, y1, x2, y2);
+                    if (distanceSquared < maxDistanceSquared
+                            && viewportCuller.isLineVisible(x1, y1, x2, y2, lineThickness)) {
 
-                        final int lineColor = LineColorResolver.resolveLineColorWithAlpha(
-                                scene.getAlpha(),
-                                scene.getLineColor(),
-                                scene.getLineLength(),
-                                distance);
+                        final int lineColor = lineColorTable.resolveLineColor(distanceSquared);
 
                         renderer.drawLine(
                                 x1,
                                 y1,
                                 x2,
                                 y2,
-                                scene.getLineThickness(),
+                                lineThickness,
                                 lineColor);
                     }
                 }
 
                 final float radius = radiuses.get(i);
-                renderer.fillCircle(x1, y1, radius, particleColor);
+                if (viewportCuller.isCircleVisible(x1, y1, radius)) {
+                    renderer.fillCircle(x1, y1, radius, particleColor);
+                }
             }
         }
     }
+
+    private void drawSelectedLines(@NonNull final Scene scene, final float lineThickness) {
+        lineSelector.select(scene, lineColorTable, viewportCuller);
+        final int linesCount = lineSelector.getSelectedCount();
+        for (int i = 0; i < linesCount; i++) {
+            final int start = lineSelector.getSelectedStart(i);
+            final int end = lineSelector.getSelectedEnd(i);
+            renderer.drawLine(
+                    scene.getParticleX(start),
+                    scene.getParticleY(start),
+                    scene.getParticleX(end),
+                    scene.getParticleY(end),
+                    lineThickness,
+                    lineColorTable.resolveLineColor(lineSelector.getSelectedDistanceSquared(i)));
+        }
+    }
 }
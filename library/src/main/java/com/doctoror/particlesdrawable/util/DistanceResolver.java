@@ -32,4 +32,15 @@ public final class DistanceResolver {
                         (ay - by) * (ay - by)
         );
     }
+
+    /**
+     * Calculates the squared distance between two points. Cheaper than
+     * {@link #distance(float, float, float, float)} for comparing distances.
+     *
+     * @return squared distance between two points
+     */
+    public static float distanceSquared(final float ax, final float ay,
+                                        final float bx, final float by) {
+        return (ax - bx) * (ax - bx) + (ay - by) * (ay - by);
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneChangeTracker;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+/**
+ * Lookup table of line colors with alpha, indexed by quantized squared line length, so that
+ * connection lines are resolved without a square root and a division per particle pair.
+ * <p>
+ * {@link #resolveLineColor(float)} may be called from multiple threads, but not concurrently with
+ * {@link #update(Scene)}.
+ */
+@KeepAsApi
+public final class LineColorTable {
+
+    /**
+     * The number of entries. Entries are uniform in squared length, so the alpha error is the
+     * largest for the shortest lines, where it stays below 4% of the full line alpha.
+     */
+    static final int SIZE = 1024;
+
+    private final int[] colors = new int[SIZE];
+
+    private final SceneChangeTracker tracker = new SceneChangeTracker(
+            Scene.PROPERTY_ALPHA | Scene.PROPERTY_LINE_COLOR | Scene.PROPERTY_LINE_LENGTH);
+
+    private float maxDistanceSquared;
+    private float indexScale;
+
+    /**
+     * Rebuilds the table if the scene alpha, line color or line length changed since the last
+     * update.
+     *
+     * @param scene the scene to resolve line colors for
+     */
+    public void update(@NonNull final Scene scene) {
+        if (tracker.poll(scene)) {
+            rebuild(scene.getAlpha(), scene.getLineColor(), scene.getLineLength());
+        }
+    }
+
+    /**
+     * Rebuilds the table unconditionally.
+     *
+     * @param sceneAlpha  the scene alpha
+     * @param lineColor   the line color
+     * @param maxDistance the max line length
+     */
+    public void rebuild(
+            @IntRange(from = 0, to = 255) final int sceneAlpha,
+            @ColorInt final int lineColor,
+            final float maxDistance) {
+        final float lengthSquared = maxDistance * maxDistance;
+        indexScale = lengthSquared > 0f ? SIZE / lengthSquared : 0f;
+
+        // Alpha decreases with length, so entries from the first transparent one are all
+        // transparent, and lines that map to them are not worth drawing
+        int visibleEntries = 0;
+        for (int i = 0; i < SIZE; i++) {
+            // Sample in the middle of the squared length range the entry covers
+            final float distance = maxDistance * (float) Math.sqrt((i + 0.5f) / SIZE);
+            colors[i] = LineColorResolver.resolveLineColorWithAlpha(
+                    sceneAlpha, lineColor, maxDistance, distance);
+            if (colors[i] >>> 24 != 0) {
+                visibleEntries = i + 1;
+            }
+        }
+        maxDistanceSquared = visibleEntries == SIZE
+                ? lengthSquared
+                : visibleEntries * lengthSquared / SIZE;
+    }
+
+    /**
+     * @return the squared length from which lines are fully transparent or longer than the max
+     * line length, such lines must not be drawn
+     */
+    public float getMaxDistanceSquared() {
+        return maxDistanceSquared;
+    }
+
+    /**
+     * @param distanceSquared the squared line length, less than {@link #getMaxDistanceSquared()}
+     * @return the line color with alpha for the line length
+     */
+    @ColorInt
+    public int resolveLineColor(final float distanceSquared) {
+        return colors[Math.min((int) (distanceSquared * indexScale), SIZE - 1)];
+    }
+}
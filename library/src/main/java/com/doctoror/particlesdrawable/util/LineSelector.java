@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+import com.doctoror.particlesdrawable.model.Scene;
+
+import java.util.Arrays;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+/**
+ * Selects connection lines to draw within a line budget, so that a cluster of particles cannot
+ * produce a number of lines that grows with the square of its size. When over budget, the
+ * shortest, and thus the most opaque, lines are kept.
+ * <p>
+ * Candidate lines are ordered by bucketing their squared length, not by a full sort, so lines of
+ * similar length are kept in particle order.
+ */
+@KeepAsApi
+public final class LineSelector {
+
+    /**
+     * No limit on the number of lines.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final int BUCKETS = 64;
+
+    private final int[] bucketStarts = new int[BUCKETS + 1];
+
+    private int maxLines = UNLIMITED;
+    private int maxLinesPerParticle = UNLIMITED;
+
+    private int candidatesCount;
+    private int[] candidateStarts = new int[0];
+    private int[] candidateEnds = new int[0];
+    private float[] candidateDistancesSquared = new float[0];
+    private byte[] candidateBuckets = new byte[0];
+
+    private int selectedCount;
+    private int[] selectedStarts = new int[0];
+    private int[] selectedEnds = new int[0];
+    private float[] selectedDistancesSquared = new float[0];
+
+    private int[] lineCounts = new int[0];
+
+    /**
+     * @param maxLines            the max number of lines per frame, or {@link #UNLIMITED}
+     * @param maxLinesPerParticle the max number of lines from and to a single particle, or
+     *                            {@link #UNLIMITED}
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setLimits(
+            @IntRange(from = 0) final int maxLines,
+            @IntRange(from = 0) final int maxLinesPerParticle) {
+        if (maxLines < 0) {
+            throw new IllegalArgumentException("maxLines must not be negative");
+        }
+        if (maxLinesPerParticle < 0) {
+            throw new IllegalArgumentException("maxLinesPerParticle must not be negative");
+        }
+        this.maxLines = maxLines;
+        this.maxLinesPerParticle = maxLinesPerParticle;
+    }
+
+    /**
+     * @return true if any limit is set, and lines must be resolved with {@link #select(Scene,
+     * LineColorTable, ViewportCuller)}
+     */
+    public boolean isLimited() {
+        return maxLines != UNLIMITED || maxLinesPerParticle != UNLIMITED;
+    }
+
+    /**
+     * Selects visible lines of the scene within the limits, shortest first.
+     *
+     * @param scene          the scene
+     * @param lineColorTable the line colors, updated for the scene
+     * @param viewportCuller the culler, updated for the scene
+     */
+    public void select(
+            @NonNull final Scene scene,
+            @NonNull final LineColorTable lineColorTable,
+            @NonNull final ViewportCuller viewportCuller) {
+        collectCandidates(scene, lineColorTable, viewportCuller);
+        sortCandidatesIntoBuckets();
+        applyLimits(scene.getDensity());
+    }
+
+    private void collectCandidates(
+            @NonNull final Scene scene,
+            @NonNull final LineColorTable lineColorTable,
+            @NonNull final ViewportCuller viewportCuller) {
+        final float maxDistanceSquared = lineColorTable.getMaxDistanceSquared();
+        final float bucketScale = maxDistanceSquared > 0f ? BUCKETS / maxDistanceSquared : 0f;
+        final float lineThickness = scene.getLineThickness();
+
+        candidatesCount = 0;
+        Arrays.fill(bucketStarts, 0);
+
+        final int particlesCount = scene.getDensity();
+        for (int i = 0; i < particlesCount; i++) {
+
+            final float x1 = scene.getParticleX(i);
+            final float y1 = scene.getParticleY(i);
+
+            for (int j = i + 1; j < particlesCount; j++) {
+
+                final float x2 = scene.getParticleX(j);
+                final float y2 = scene.getParticleY(j);
+
+                final float distanceSquared = DistanceResolver.distanceSquared(x1, y1, x2, y2);
+                if (distanceSquared < maxDistanceSquared
+                        && viewportCuller.isLineVisible(x1, y1, x2, y2, lineThickness)) {
+                    final int bucket = Math.min((int) (distanceSquared * bucketScale), BUCKETS - 1);
+                    addCandidate(i, j, distanceSquared, bucket);
+                    bucketStarts[bucket + 1]++;
+                }
+            }
+        }
+    }
+
+    private void addCandidate(
+            final int start,
+            final int end,
+            final float distanceSquared,
+            final int bucket) {
+        if (candidatesCount == candidateStarts.length) {
+            final int capacity = Math.max(16, candidatesCount * 2);
+            candidateStarts = Arrays.copyOf(candidateStarts, capacity);
+            candidateEnds = Arrays.copyOf(candidateEnds, capacity);
+            candidateDistancesSquared = Arrays.copyOf(candidateDistancesSquared, capacity);
+            candidateBuckets = Arrays.copyOf(candidateBuckets, capacity);
+        }
+        candidateStarts[candidatesCount] = start;
+        candidateEnds[candidatesCount] = end;
+        candidateDistancesSquared[candidatesCount] = distanceSquared;
+        candidateBuckets[candidatesCount] = (byte) bucket;
+        candidatesCount++;
+    }
+
+    /**
+     * Counting sort of candidates by bucket into the selected arrays.
+     */
+    private void sortCandidatesIntoBuckets() {
+        if (selectedStarts.length < candidatesCount) {
+            selectedStarts = new int[candidateStarts.length];
+            selectedEnds = new int[candidateStarts.length];
+            selectedDistancesSquared = new float[candidateStarts.length];
+        }
+
+        // Turn counts into starts of every bucket
+        for (int b = 1; b <= BUCKETS; b++) {
+            bucketStarts[b] += bucketStarts[b - 1];
+        }
+
+        for (int c = 0; c < candidatesCount; c++) {
+            final int target = bucketStarts[candidateBuckets[c]]++;
+            selectedStarts[target] = candidateStarts[c];
+            selectedEnds[target] = candidateEnds[c];
+            selectedDistancesSquared[target] = candidateDistancesSquared[c];
+        }
+    }
+
+    /**
+     * Compacts the sorted candidates to the ones within the limits.
+     */
+    private void applyLimits(final int particlesCount) {
+        if (maxLinesPerParticle == UNLIMITED) {
+            selectedCount = Math.min(candidatesCount, maxLines);
+            return;
+        }
+
+        if (lineCounts.length < particlesCount) {
+            lineCounts = new int[particlesCount];
+        } else {
+            Arrays.fill(lineCounts, 0, particlesCount, 0);
+        }
+
+        selectedCount = 0;
+        for (int c = 0; c < candidatesCount && selectedCount < maxLines; c++) {
+            final int start = selectedStarts[c];
+            final int end = selectedEnds[c];
+            if (lineCounts[start] < maxLinesPerParticle && lineCounts[end] < maxLinesPerParticle) {
+                lineCounts[start]++;
+                lineCounts[end]++;
+
+                selectedStarts[selectedCount] = start;
+                selectedEnds[selectedCount] = end;
+                selectedDistancesSquared[selectedCount] = selectedDistancesSquared[c];
+                selectedCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of lines selected by the last {@link #select(Scene, LineColorTable,
+     * ViewportCuller)}
+     */
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /**
+     * @param index the line index, less than {@link #getSelectedCount()}
+     * @return the particle the line starts at
+     */
+    public int getSelectedStart(final int index) {
+        return selectedStarts[index];
+    }
+
+    /**
+     * @param index the line index, less than {@link #getSelectedCount()}
+     * @return the particle the line ends at
+     */
+    public int getSelectedEnd(final int index) {
+        return selectedEnds[index];
+    }
+
+    /**
+     * @param index the line index, less than {@link #getSelectedCount()}
+     * @return the squared length of the line
+     */
+    public float getSelectedDistanceSquared(final int index) {
+        return selectedDistancesSquared[index];
+    }
+}
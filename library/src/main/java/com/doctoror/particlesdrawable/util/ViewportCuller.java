@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+import com.doctoror.particlesdrawable.model.Scene;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Tells whether particles and connection lines intersect the visible part of the scene. Particles
+ * are kept alive for a line length beyond the scene bounds, so that lines to them do not pop, but
+ * anything entirely outside the bounds does not have to be drawn.
+ * <p>
+ * Culls nothing until {@link #update(Scene, float)} is called for a scene with dimensions.
+ */
+@KeepAsApi
+public final class ViewportCuller {
+
+    private boolean enabled;
+
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+
+    /**
+     * Sets the viewport to the scene bounds.
+     *
+     * @param scene        the scene to cull
+     * @param translationX the horizontal translation the scene is drawn with
+     */
+    public void update(@NonNull final Scene scene, final float translationX) {
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        enabled = width > 0 && height > 0;
+        left = -translationX;
+        top = 0f;
+        right = width - translationX;
+        bottom = height;
+    }
+
+    /**
+     * @return true if a circle may be visible
+     */
+    public boolean isCircleVisible(final float x, final float y, final float radius) {
+        return !enabled
+                || (x + radius > left
+                && x - radius < right
+                && y + radius > top
+                && y - radius < bottom);
+    }
+
+    /**
+     * Tests the bounding box of the line, so may return true for some lines that pass close to a
+     * viewport corner without intersecting it.
+     *
+     * @param thickness the line thickness
+     * @return true if a line may be visible
+     */
+    public boolean isLineVisible(
+            final float startX,
+            final float startY,
+            final float stopX,
+            final float stopY,
+            final float thickness) {
+        if (!enabled) {
+            return true;
+        }
+        // A full thickness of padding also covers antialiased line edges
+        final float minX;
+        final float maxX;
+        if (startX < stopX) {
+            minX = startX;
+            maxX = stopX;
+        } else {
+            minX = stopX;
+            maxX = startX;
+        }
+        if (maxX + thickness <= left || minX - thickness >= right) {
+            return false;
+        }
+        final float minY;
+        final float maxY;
+        if (startY < stopY) {
+            minY = startY;
+            maxY = stopY;
+        } else {
+            minY = stopY;
+            maxY = startY;
+        }
+        return maxY + thickness > top && minY - thickness < bottom;
+    }
+}
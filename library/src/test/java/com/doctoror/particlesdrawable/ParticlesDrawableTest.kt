@@ -26,6 +26,7 @@ import android.util.AttributeSet
 import com.doctoror.particlesdrawable.engine.Engine
 import com.doctoror.particlesdrawable.engine.SceneConfigurator
 import com.doctoror.particlesdrawable.model.Scene
+import com.doctoror.particlesdrawable.model.SceneSpec
 import com.doctoror.particlesdrawable.renderer.CanvasSceneRenderer
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertTrue
@@ -178,6 +179,18 @@ class ParticlesDrawableTest {
         verify(engine).nextFrame()
     }
 
+    @Test
+    fun forwardsSetDensityScalingToEngine() {
+        underTest.setDensityScaling(0.01f, 10, 100)
+        verify(engine).setDensityScaling(eq(0.01f), any(), eq(10), eq(100))
+    }
+
+    @Test
+    fun forwardsSetParticleReorderIntervalToEngine() {
+        underTest.setParticleReorderInterval(30)
+        verify(engine).particleReorderInterval = 30
+    }
+
     @Test
     fun forwardsMakeFreshFrameToEngine() {
         underTest.makeFreshFrame()
@@ -263,6 +276,13 @@ class ParticlesDrawableTest {
         verify(scene).lineColor = value
     }
 
+    @Test
+    fun forwardsApplyToScene() {
+        val spec = SceneSpec.Builder().build()
+        underTest.apply(spec)
+        verify(scene).apply(spec)
+    }
+
     @Test
     fun returnsLineColorFromScene() {
         val value = 12
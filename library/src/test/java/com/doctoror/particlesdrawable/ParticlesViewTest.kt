@@ -22,12 +22,15 @@ import androidx.test.core.app.ApplicationProvider
 import com.doctoror.particlesdrawable.engine.Engine
 import com.doctoror.particlesdrawable.engine.SceneConfigurator
 import com.doctoror.particlesdrawable.model.Scene
+import com.doctoror.particlesdrawable.model.SceneSpec
 import com.doctoror.particlesdrawable.renderer.CanvasSceneRenderer
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertTrue
 import org.junit.Ignore
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.kotlin.any
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.never
@@ -206,6 +209,18 @@ class ParticlesViewTest {
         verify(engine).nextFrame()
     }
 
+    @Test
+    fun forwardsSetDensityScalingToEngine() {
+        underTest.setDensityScaling(0.01f, 10, 100)
+        verify(engine).setDensityScaling(eq(0.01f), any(), eq(10), eq(100))
+    }
+
+    @Test
+    fun forwardsSetParticleReorderIntervalToEngine() {
+        underTest.setParticleReorderInterval(30)
+        verify(engine).particleReorderInterval = 30
+    }
+
     @Test
     fun forwardsMakeFreshFrameToEngine() {
         underTest.makeFreshFrame()
@@ -291,6 +306,13 @@ class ParticlesViewTest {
         verify(scene).lineColor = value
     }
 
+    @Test
+    fun forwardsApplyToScene() {
+        val spec = SceneSpec.Builder().build()
+        underTest.apply(spec)
+        verify(scene).apply(spec)
+    }
+
     @Test
     fun returnsLineColorFromScene() {
         val value = 12
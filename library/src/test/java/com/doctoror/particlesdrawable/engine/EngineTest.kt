@@ -7,8 +7,10 @@ import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertTrue
 import org.junit.Test
+import org.mockito.kotlin.any
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.verifyNoInteractions
@@ -126,6 +128,28 @@ class EngineTest {
             .advanceToNextFrame(scene, (timeWhenFrame2Starts - frameTime1) * stepPerFrame)
     }
 
+    @Test
+    fun analyticMotionIsDisabledByDefault() {
+        assertFalse(underTest.isAnalyticMotion)
+    }
+
+    @Test
+    fun rebasesParticleMotionWhenAnalyticMotionEnabled() {
+        underTest.isAnalyticMotion = true
+
+        assertTrue(underTest.isAnalyticMotion)
+        verify(scene).rebaseParticleMotion()
+    }
+
+    @Test
+    fun advancesFrameAnalyticallyWhenAnalyticMotionEnabled() {
+        underTest.isAnalyticMotion = true
+        underTest.nextFrame()
+
+        verify(frameAdvancer).advanceToNextFrameAnalytically(scene, 1f)
+        verify(frameAdvancer, never()).advanceToNextFrame(any(), any())
+    }
+
     @Test
     fun frameTimeResetOnMakeFreshFrame() {
         verifyFrameTimeResetsWhenFunctionInvoked { underTest.makeFreshFrame() }
@@ -328,6 +352,58 @@ class EngineTest {
         verifyNoMoreInteractions(particleGenerator)
     }
 
+    @Test
+    fun scalesDensityWithSceneAreaOnDimensionsChange() {
+        underTest.setDensityScaling(0.01f, 2f, 0, 1000)
+        givenSceneDimensions(400, 300)
+
+        underTest.setDimensions(400, 300)
+
+        // 400 x 300 px is 200 x 150 dp
+        verify(scene).density = 300
+    }
+
+    @Test
+    fun clampsScaledDensity() {
+        underTest.setDensityScaling(0.01f, 2f, 0, 100)
+        givenSceneDimensions(400, 300)
+
+        underTest.setDimensions(400, 300)
+
+        verify(scene).density = 100
+    }
+
+    @Test
+    fun doesNotScaleDensityWhenDisabled() {
+        givenSceneDimensions(400, 300)
+
+        underTest.setDimensions(400, 300)
+
+        verify(scene, never()).density = any()
+    }
+
+    @Test
+    fun makesFreshFrameWhenScaledDensityChangesAfterParticlesInited() {
+        givenSceneDimensions(1, 2)
+        underTest.setDimensions(1, 2)
+        whenever(scene.density).thenReturn(3)
+
+        underTest.setDensityScaling(1f, 1f, 5, 5)
+
+        verify(scene).density = 5
+        verifyMakesFreshFrame(3)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsWhenMaxScaledDensityIsLessThanMin() {
+        underTest.setDensityScaling(1f, 1f, 10, 9)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsWhenDisplayDensityIsZero() {
+        underTest.setDensityScaling(1f, 0f, 0, 10)
+    }
+
     private fun verifyMakesFreshFrame(particlesCount: Int, times: Int = 1) {
         val inorder = inOrder(particleGenerator)
         repeat(times) {
@@ -16,6 +16,7 @@
 package com.doctoror.particlesdrawable.engine
 
 import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertTrue
 import org.junit.Test
@@ -179,6 +180,84 @@ class FrameAdvancerTest {
         verify(particleGenerator).applyFreshParticleOffScreen(scene, 0)
     }
 
+    @Test
+    fun advancesToNextFrameAnalyticallyInBounds() {
+        val dCos = 0.59750384f
+        val dSin = 0.80186605f
+        val originX = 4f
+        val originY = 2f
+        val spawnTime = 4f
+        val motionTime = 10f
+        val step = 2f
+
+        givenParticleOrigin(dCos = dCos, dSin = dSin, x = originX, y = originY)
+        whenever(scene.getParticleSpawnTime(0)).thenReturn(spawnTime)
+        whenever(scene.motionTime).thenReturn(motionTime)
+
+        underTest.advanceToNextFrameAnalytically(scene, step)
+
+        val expectedTime = motionTime + step * scene.speedFactor
+        val distance = (expectedTime - spawnTime) * scene.getParticleSpeedFactor(0)
+
+        verify(scene).motionTime = expectedTime
+        verify(scene).setParticleX(0, originX + distance * dCos)
+        verify(scene).setParticleY(0, originY + distance * dSin)
+        verifyNoInteractions(particleGenerator)
+    }
+
+    @Test
+    fun generatesNewOffscreenParticleWhenExitTimePassed() {
+        givenParticleOrigin(dCos = 1f, dSin = 0f, x = scene.width - 1f, y = 10f)
+
+        underTest.advanceToNextFrameAnalytically(scene, 2f)
+
+        verify(particleGenerator).applyFreshParticleOffScreen(scene, 0)
+    }
+
+    @Test
+    fun resolvesExitTimeForParticle() {
+        whenever(scene.getParticleSpeedFactor(0)).thenReturn(2f)
+        whenever(scene.getParticleSpawnTime(0)).thenReturn(5f)
+        givenParticleOrigin(dCos = 1f, dSin = 0f, x = 10f, y = 20f)
+
+        val offset = 3f
+        val exitTime = FrameAdvancer.resolveExitTime(scene, 0, offset)
+
+        assertEquals(5f + (scene.width + offset - 10f) / 2f, exitTime)
+    }
+
+    @Test
+    fun resolvesExitTimeForParticleExitingVertically() {
+        givenParticleOrigin(dCos = 0f, dSin = -1f, x = 10f, y = 20f)
+
+        val offset = 3f
+        val exitTime = FrameAdvancer.resolveExitTime(scene, 0, offset)
+
+        assertEquals(20f + offset, exitTime)
+    }
+
+    @Test
+    fun rebasesParticleMotionWhenMotionTimeExceedsThreshold() {
+        whenever(scene.motionTime)
+            .thenReturn(FrameAdvancer.MOTION_TIME_REBASE_THRESHOLD + 1f)
+
+        underTest.advanceToNextFrameAnalytically(scene, 1f)
+
+        verify(scene).rebaseParticleMotion()
+    }
+
+    private fun givenParticleOrigin(
+        dCos: Float,
+        dSin: Float,
+        x: Float,
+        y: Float
+    ) {
+        whenever(scene.getParticleOriginX(0)).thenReturn(x)
+        whenever(scene.getParticleOriginY(0)).thenReturn(y)
+        whenever(scene.getParticleDirectionCos(0)).thenReturn(dCos)
+        whenever(scene.getParticleDirectionSin(0)).thenReturn(dSin)
+    }
+
     private fun givenParticleCoordinates(
         dCos: Float,
         dSin: Float,
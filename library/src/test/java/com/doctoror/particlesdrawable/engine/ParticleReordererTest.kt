@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.engine
+
+import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+
+class ParticleReordererTest {
+
+    private val underTest = ParticleReorderer()
+
+    @Test
+    fun interleavesBitsOfXAtEvenPositions() {
+        assertEquals(0, ParticleReorderer.interleave(0, 0))
+        assertEquals(1, ParticleReorderer.interleave(1, 0))
+        assertEquals(2, ParticleReorderer.interleave(0, 1))
+        assertEquals(0b0111, ParticleReorderer.interleave(0b11, 0b01))
+        assertEquals(0x3fffffff, ParticleReorderer.interleave(0x7fff, 0x7fff))
+    }
+
+    @Test
+    fun reordersParticlesAlongZOrderCurve() {
+        // Curve order is (10, 10), (90, 10), (10, 90), (90, 90)
+        val scene = mockScene(
+            floatArrayOf(90f, 90f),
+            floatArrayOf(10f, 10f),
+            floatArrayOf(10f, 90f),
+            floatArrayOf(90f, 10f)
+        )
+
+        underTest.reorder(scene)
+
+        val captor = argumentCaptor<IntArray>()
+        verify(scene).reorderParticles(captor.capture())
+        assertArrayEquals(intArrayOf(1, 3, 2, 0), captor.firstValue.copyOf(4))
+    }
+
+    @Test
+    fun doesNotReorderParticlesInOrder() {
+        val scene = mockScene(
+            floatArrayOf(10f, 10f),
+            floatArrayOf(90f, 10f)
+        )
+
+        underTest.reorder(scene)
+
+        verify(scene, never()).reorderParticles(any())
+    }
+
+    @Test
+    fun doesNotReorderSceneWithoutDimensions() {
+        val scene: Scene = mock {
+            on { it.density }.doReturn(2)
+        }
+
+        underTest.reorder(scene)
+
+        verify(scene, never()).reorderParticles(any())
+    }
+
+    private fun mockScene(vararg particles: FloatArray): Scene = mock {
+        on { it.density }.doReturn(particles.size)
+        on { it.width }.doReturn(100)
+        on { it.height }.doReturn(100)
+        on { it.lineLength }.doReturn(10f)
+        on { it.particleRadiusMax }.doReturn(2f)
+        particles.forEachIndexed { index, particle ->
+            on { it.getParticleX(index) }.doReturn(particle[0])
+            on { it.getParticleY(index) }.doReturn(particle[1])
+        }
+    }
+}
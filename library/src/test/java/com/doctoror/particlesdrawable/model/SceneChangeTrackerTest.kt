@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.model
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+
+class SceneChangeTrackerTest {
+
+    private val scene: Scene = mock()
+
+    private val underTest = SceneChangeTracker(
+        Scene.PROPERTY_LINE_COLOR or Scene.PROPERTY_ALPHA
+    )
+
+    @Test
+    fun reportsChangeOnFirstPoll() {
+        assertTrue(underTest.poll(scene))
+    }
+
+    @Test
+    fun doesNotQueryPropertiesWhenVersionIsUnchanged() {
+        underTest.poll(scene)
+
+        assertFalse(underTest.poll(scene))
+        verify(scene, never()).getChangedProperties(any())
+    }
+
+    @Test
+    fun reportsChangeOfTrackedProperty() {
+        underTest.poll(scene)
+        whenever(scene.version).thenReturn(2)
+        whenever(scene.getChangedProperties(0)).thenReturn(Scene.PROPERTY_ALPHA)
+
+        assertTrue(underTest.poll(scene))
+        assertFalse(underTest.poll(scene))
+    }
+
+    @Test
+    fun ignoresChangeOfUntrackedProperty() {
+        underTest.poll(scene)
+        whenever(scene.version).thenReturn(2)
+        whenever(scene.getChangedProperties(0)).thenReturn(Scene.PROPERTY_DENSITY)
+
+        assertFalse(underTest.poll(scene))
+    }
+
+    @Test
+    fun reportsChangeAfterReset() {
+        underTest.poll(scene)
+
+        underTest.reset()
+
+        assertTrue(underTest.poll(scene))
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.model
+
+import com.doctoror.particlesdrawable.ASSERT_DELTA
+import com.doctoror.particlesdrawable.Defaults
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner::class)
+class SceneSpecTest {
+
+    @Test
+    fun buildsWithDefaults() {
+        val spec = SceneSpec.Builder().build()
+
+        assertEquals(Defaults.DENSITY, spec.density)
+        assertEquals(Defaults.FRAME_DELAY, spec.frameDelay)
+        assertEquals(Defaults.LINE_COLOR, spec.lineColor)
+        assertEquals(Defaults.LINE_LENGTH, spec.lineLength, ASSERT_DELTA)
+        assertEquals(Defaults.LINE_THICKNESS, spec.lineThickness, ASSERT_DELTA)
+        assertEquals(Defaults.PARTICLE_COLOR, spec.particleColor)
+        assertEquals(Defaults.PARTICLE_RADIUS_MIN, spec.particleRadiusMin, ASSERT_DELTA)
+        assertEquals(Defaults.PARTICLE_RADIUS_MAX, spec.particleRadiusMax, ASSERT_DELTA)
+        assertEquals(Defaults.SPEED_FACTOR, spec.speedFactor, ASSERT_DELTA)
+    }
+
+    @Test
+    fun buildsWithValuesOfConfiguration() {
+        val scene = Scene().apply {
+            density = 3
+            frameDelay = 4
+            lineColor = 5
+            lineLength = 6f
+            lineThickness = 7f
+            particleColor = 8
+            setParticleRadiusRange(9f, 10f)
+            speedFactor = 11f
+        }
+
+        val spec = SceneSpec.Builder(scene).build()
+
+        assertEquals(3, spec.density)
+        assertEquals(4, spec.frameDelay)
+        assertEquals(5, spec.lineColor)
+        assertEquals(6f, spec.lineLength, ASSERT_DELTA)
+        assertEquals(7f, spec.lineThickness, ASSERT_DELTA)
+        assertEquals(8, spec.particleColor)
+        assertEquals(9f, spec.particleRadiusMin, ASSERT_DELTA)
+        assertEquals(10f, spec.particleRadiusMax, ASSERT_DELTA)
+        assertEquals(11f, spec.speedFactor, ASSERT_DELTA)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithNegativeDensity() {
+        SceneSpec.Builder().setDensity(-1).build()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithNegativeFrameDelay() {
+        SceneSpec.Builder().setFrameDelay(-1).build()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithLineThicknessLessThanOne() {
+        SceneSpec.Builder().setLineThickness(0.5f).build()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithNegativeLineLength() {
+        SceneSpec.Builder().setLineLength(-1f).build()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithMaxRadiusLessThanMin() {
+        SceneSpec.Builder().setParticleRadiusRange(2f, 1f).build()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun crashesOnBuildWithSpeedFactorNAN() {
+        SceneSpec.Builder().setSpeedFactor(Float.NaN).build()
+    }
+}
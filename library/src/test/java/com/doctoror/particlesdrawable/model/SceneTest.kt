@@ -18,6 +18,8 @@ package com.doctoror.particlesdrawable.model
 import android.graphics.Color
 import com.doctoror.particlesdrawable.ASSERT_DELTA
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
@@ -68,6 +70,37 @@ class SceneTest {
         assertEquals(12f, underTest.getParticleSpeedFactor(1))
     }
 
+    @Test
+    fun recordsSpawnDataWhenParticleDataSet() {
+        underTest.motionTime = 3f
+
+        underTest.setParticleData(0, 1f, 2f, 0f, 1f, 4f, 1f)
+
+        assertEquals(1f, underTest.getParticleOriginX(0))
+        assertEquals(2f, underTest.getParticleOriginY(0))
+        assertEquals(3f, underTest.getParticleSpawnTime(0))
+        assertTrue(underTest.getParticleExitTime(0).isNaN())
+        assertEquals(1, underTest.getParticleSpawnGeneration(0))
+    }
+
+    @Test
+    fun rebasesParticleMotion() {
+        underTest.setParticleData(0, 1f, 2f, 0f, 1f, 4f, 1f)
+        underTest.setParticleX(0, 5f)
+        underTest.setParticleY(0, 6f)
+        underTest.setParticleExitTime(0, 9f)
+        underTest.motionTime = 7f
+
+        underTest.rebaseParticleMotion()
+
+        assertEquals(0f, underTest.motionTime)
+        assertEquals(5f, underTest.getParticleOriginX(0))
+        assertEquals(6f, underTest.getParticleOriginY(0))
+        assertEquals(0f, underTest.getParticleSpawnTime(0))
+        assertTrue(underTest.getParticleExitTime(0).isNaN())
+        assertEquals(2, underTest.getParticleSpawnGeneration(0))
+    }
+
     @Test(expected = IllegalArgumentException::class)
     fun crashesWhenSetFrameDelayToNegative() {
         underTest.frameDelay = -1
@@ -263,4 +296,152 @@ class SceneTest {
         assertEquals(0f, underTest.getParticleDirectionSin(density - 1))
         assertEquals(0f, underTest.getParticleSpeedFactor(density - 1))
     }
+
+    @Test
+    fun copiesStateFromSource() {
+        val source = Scene()
+        source.density = 2
+        source.lineThickness = 3f
+        source.width = 320
+        source.height = 240
+        source.motionTime = 5f
+        source.setParticleData(1, 7f, 8f, 9f, 10f, 11f, 12f)
+
+        underTest.copyStateFrom(source)
+
+        assertEquals(2, underTest.density)
+        assertEquals(3f, underTest.lineThickness)
+        assertEquals(320, underTest.width)
+        assertEquals(240, underTest.height)
+        assertEquals(5f, underTest.motionTime)
+        assertEquals(7f, underTest.getParticleX(1))
+        assertEquals(8f, underTest.getParticleY(1))
+        assertEquals(9f, underTest.getParticleDirectionCos(1))
+        assertEquals(10f, underTest.getParticleDirectionSin(1))
+        assertEquals(11f, underTest.radiuses.get(1))
+        assertEquals(12f, underTest.getParticleSpeedFactor(1))
+        assertEquals(7f, underTest.getParticleOriginX(1))
+        assertEquals(5f, underTest.getParticleSpawnTime(1))
+        assertEquals(1, underTest.getParticleSpawnGeneration(1))
+    }
+
+    @Test
+    fun appliesSpec() {
+        val spec = SceneSpec.Builder()
+            .setDensity(3)
+            .setFrameDelay(4)
+            .setLineColor(5)
+            .setLineLength(6f)
+            .setLineThickness(7f)
+            .setParticleColor(8)
+            .setParticleRadiusRange(9f, 10f)
+            .setSpeedFactor(11f)
+            .build()
+
+        underTest.apply(spec)
+
+        assertEquals(3, underTest.density)
+        assertEquals(4, underTest.frameDelay)
+        assertEquals(5, underTest.lineColor)
+        assertEquals(6f, underTest.lineLength, ASSERT_DELTA)
+        assertEquals(7f, underTest.lineThickness, ASSERT_DELTA)
+        assertEquals(8, underTest.particleColor)
+        assertEquals(9f, underTest.particleRadiusMin, ASSERT_DELTA)
+        assertEquals(10f, underTest.particleRadiusMax, ASSERT_DELTA)
+        assertEquals(11f, underTest.speedFactor, ASSERT_DELTA)
+        assertEquals(6, underTest.coordinates.capacity())
+        assertEquals(3, underTest.radiuses.capacity())
+    }
+
+    @Test
+    fun keepsBuffersWhenAppliedSpecDoesNotChangeDensity() {
+        underTest.density = 3
+        val coordinates = underTest.coordinates
+
+        underTest.apply(SceneSpec.Builder(underTest).setLineColor(1).build())
+
+        assertSame(coordinates, underTest.coordinates)
+    }
+
+    @Test
+    fun reportsChangedProperties() {
+        val version = underTest.version
+
+        underTest.lineLength = underTest.lineLength + 1f
+        underTest.alpha = 10
+
+        assertEquals(
+            Scene.PROPERTY_LINE_LENGTH or Scene.PROPERTY_ALPHA,
+            underTest.getChangedProperties(version)
+        )
+    }
+
+    @Test
+    fun doesNotReportPropertiesSetToSameValue() {
+        val version = underTest.version
+
+        underTest.lineColor = underTest.lineColor
+        underTest.setParticleRadiusRange(underTest.particleRadiusMin, underTest.particleRadiusMax)
+
+        assertEquals(version, underTest.version)
+        assertEquals(0, underTest.getChangedProperties(version))
+    }
+
+    @Test
+    fun reportsPropertiesChangedBySpec() {
+        val version = underTest.version
+
+        underTest.apply(SceneSpec.Builder(underTest).setParticleColor(1).build())
+
+        assertEquals(Scene.PROPERTY_PARTICLE_COLOR, underTest.getChangedProperties(version))
+    }
+
+    @Test
+    fun copiesVersionsWithState() {
+        val version = underTest.version
+        underTest.width = 10
+        val copy = Scene()
+
+        copy.copyStateFrom(underTest)
+
+        assertEquals(underTest.version, copy.version)
+        assertEquals(Scene.PROPERTY_DIMENSIONS, copy.getChangedProperties(version))
+    }
+
+    @Test
+    fun reordersParticles() {
+        underTest.density = 3
+        underTest.setParticleData(0, 1f, 2f, 3f, 4f, 5f, 6f)
+        underTest.setParticleData(1, 7f, 8f, 9f, 10f, 11f, 12f)
+        underTest.setParticleData(2, 13f, 14f, 15f, 16f, 17f, 18f)
+        underTest.setParticleExitTime(2, 19f)
+
+        underTest.reorderParticles(intArrayOf(2, 1, 0))
+
+        assertEquals(13f, underTest.getParticleX(0))
+        assertEquals(14f, underTest.getParticleY(0))
+        assertEquals(15f, underTest.getParticleDirectionCos(0))
+        assertEquals(16f, underTest.getParticleDirectionSin(0))
+        assertEquals(17f, underTest.radiuses.get(0))
+        assertEquals(18f, underTest.getParticleSpeedFactor(0))
+        assertEquals(13f, underTest.getParticleOriginX(0))
+        assertEquals(14f, underTest.getParticleOriginY(0))
+        assertEquals(19f, underTest.getParticleExitTime(0))
+        assertEquals(7f, underTest.getParticleX(1))
+        assertEquals(1f, underTest.getParticleX(2))
+    }
+
+    @Test
+    fun advancesSpawnGenerationsOfMovedParticlesOnly() {
+        underTest.density = 3
+        underTest.setParticleData(0, 1f, 2f, 3f, 4f, 5f, 6f)
+        underTest.setParticleData(2, 1f, 2f, 3f, 4f, 5f, 6f)
+        underTest.setParticleData(2, 1f, 2f, 3f, 4f, 5f, 6f)
+
+        underTest.reorderParticles(intArrayOf(2, 1, 0))
+
+        assertEquals(3, underTest.getParticleSpawnGeneration(0))
+        assertEquals(0, underTest.getParticleSpawnGeneration(1))
+        assertEquals(3, underTest.getParticleSpawnGeneration(2))
+    }
 }
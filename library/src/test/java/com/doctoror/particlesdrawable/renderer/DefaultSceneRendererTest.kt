@@ -19,7 +19,8 @@ import android.graphics.Color
 import com.doctoror.particlesdrawable.contract.LowLevelRenderer
 import com.doctoror.particlesdrawable.model.Scene
 import com.doctoror.particlesdrawable.util.DistanceResolver
-import com.doctoror.particlesdrawable.util.LineColorResolver
+import com.doctoror.particlesdrawable.util.LineColorTable
+import com.doctoror.particlesdrawable.util.LineSelector
 import com.doctoror.particlesdrawable.util.ParticleColorResolver
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -180,12 +181,7 @@ class DefaultSceneRendererTest {
         underTest.drawScene(scene)
 
         // Then
-        val expectedLineColor = LineColorResolver.resolveLineColorWithAlpha(
-            scene.alpha,
-            scene.lineColor,
-            scene.lineLength,
-            DistanceResolver.distance(x1, y1, x2, y2)
-        )
+        val expectedLineColor = resolveExpectedLineColor(scene, x1, y1, x2, y2)
 
         verify(lowLevelRenderer).drawLine(
             x1, y1, x2, y2, lineWidth, expectedLineColor
@@ -254,34 +250,19 @@ class DefaultSceneRendererTest {
         underTest.drawScene(scene)
 
         // Then
-        val expectedLineColor1 = LineColorResolver.resolveLineColorWithAlpha(
-            scene.alpha,
-            scene.lineColor,
-            scene.lineLength,
-            DistanceResolver.distance(x1, y1, x2, y2)
-        )
+        val expectedLineColor1 = resolveExpectedLineColor(scene, x1, y1, x2, y2)
 
         verify(lowLevelRenderer).drawLine(
             x1, y1, x2, y2, lineWidth, expectedLineColor1
         )
 
-        val expectedLineColor2 = LineColorResolver.resolveLineColorWithAlpha(
-            scene.alpha,
-            scene.lineColor,
-            scene.lineLength,
-            DistanceResolver.distance(x1, y1, x3, y3)
-        )
+        val expectedLineColor2 = resolveExpectedLineColor(scene, x1, y1, x3, y3)
 
         verify(lowLevelRenderer).drawLine(
             x1, y1, x3, y3, lineWidth, expectedLineColor2
         )
 
-        val expectedLineColor3 = LineColorResolver.resolveLineColorWithAlpha(
-            scene.alpha,
-            scene.lineColor,
-            scene.lineLength,
-            DistanceResolver.distance(x2, y2, x3, y3)
-        )
+        val expectedLineColor3 = resolveExpectedLineColor(scene, x2, y2, x3, y3)
 
         verify(lowLevelRenderer).drawLine(
             x2, y2, x3, y3, lineWidth, expectedLineColor3
@@ -304,4 +285,99 @@ class DefaultSceneRendererTest {
             x3, y3, radius3, expectedColor
         )
     }
+
+    @Test
+    fun doesNotRenderParticlesAndLinesOutsideScene() {
+        val radiuses = FloatBuffer.allocate(3)
+        radiuses.put(1f)
+        radiuses.put(1f)
+        radiuses.put(1f)
+
+        val scene: Scene = mock {
+            on { it.density }.doReturn(3)
+            on { it.width }.doReturn(100)
+            on { it.height }.doReturn(100)
+
+            on { it.radiuses }.doReturn(radiuses)
+
+            on { it.lineLength }.doReturn(100f)
+            on { it.lineThickness }.doReturn(1f)
+            on { it.alpha }.doReturn(255)
+
+            on { it.getParticleX(0) }.doReturn(10f)
+            on { it.getParticleY(0) }.doReturn(10f)
+            on { it.getParticleX(1) }.doReturn(-20f)
+            on { it.getParticleY(1) }.doReturn(10f)
+            on { it.getParticleX(2) }.doReturn(-20f)
+            on { it.getParticleY(2) }.doReturn(40f)
+        }
+
+        // When
+        underTest.drawScene(scene)
+
+        // Then
+        verify(lowLevelRenderer).drawLine(
+            eq(10f), eq(10f), eq(-20f), eq(10f), any(), any()
+        )
+        verify(lowLevelRenderer).drawLine(
+            eq(10f), eq(10f), eq(-20f), eq(40f), any(), any()
+        )
+        verify(lowLevelRenderer, never()).drawLine(
+            eq(-20f), eq(10f), eq(-20f), eq(40f), any(), any()
+        )
+
+        verify(lowLevelRenderer).fillCircle(eq(10f), eq(10f), any(), any())
+        verify(lowLevelRenderer, never()).fillCircle(eq(-20f), any(), any(), any())
+    }
+
+    @Test
+    fun rendersShortestLinesWithinLineBudget() {
+        val radiuses = FloatBuffer.allocate(3)
+        radiuses.put(1f)
+        radiuses.put(1f)
+        radiuses.put(1f)
+
+        val scene: Scene = mock {
+            on { it.density }.doReturn(3)
+
+            on { it.radiuses }.doReturn(radiuses)
+
+            on { it.lineLength }.doReturn(100f)
+            on { it.lineThickness }.doReturn(1f)
+            on { it.alpha }.doReturn(255)
+
+            on { it.getParticleX(0) }.doReturn(0f)
+            on { it.getParticleY(0) }.doReturn(0f)
+            on { it.getParticleX(1) }.doReturn(60f)
+            on { it.getParticleY(1) }.doReturn(0f)
+            on { it.getParticleX(2) }.doReturn(10f)
+            on { it.getParticleY(2) }.doReturn(0f)
+        }
+
+        underTest.setLineBudget(1, LineSelector.UNLIMITED)
+
+        // When
+        underTest.drawScene(scene)
+
+        // Then
+        verify(lowLevelRenderer).drawLine(
+            eq(0f), eq(0f), eq(10f), eq(0f), any(), any()
+        )
+        verify(lowLevelRenderer, times(1)).drawLine(
+            any(), any(), any(), any(), any(), any()
+        )
+        verify(lowLevelRenderer, times(3)).fillCircle(any(), any(), any(), any())
+    }
+
+    private fun resolveExpectedLineColor(
+        scene: Scene,
+        ax: Float,
+        ay: Float,
+        bx: Float,
+        by: Float
+    ): Int {
+        val table = LineColorTable()
+        table.rebuild(scene.alpha, scene.lineColor, scene.lineLength)
+        return table.resolveLineColor(DistanceResolver.distanceSquared(ax, ay, bx, by))
+    }
 }
@@ -37,4 +37,10 @@ class DistanceResolverTest {
         val result = DistanceResolver.distance(32f, 64f, 128f, 256f)
         assertTrue(result.compareTo(214.66252f) == 0)
     }
+
+    @Test
+    fun calculatesDistanceSquared() {
+        val result = DistanceResolver.distanceSquared(32f, 64f, 128f, 256f)
+        assertTrue(result.compareTo(46080f) == 0)
+    }
 }
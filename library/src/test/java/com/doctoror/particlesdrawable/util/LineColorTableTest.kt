@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util
+
+import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import kotlin.math.abs
+
+class LineColorTableTest {
+
+    private val lineColor = 0xff336699.toInt()
+
+    private val underTest = LineColorTable()
+
+    @Test
+    fun cutsOffMaxDistanceSquaredAtTransparentEntries() {
+        underTest.rebuild(255, lineColor, 12f)
+
+        // Alpha rounds to 0 from entry 1016 on
+        assertEquals(1016 * 144f / 1024, underTest.maxDistanceSquared, 0.0001f)
+    }
+
+    @Test
+    fun acceptsNoDistanceForTransparentScene() {
+        underTest.rebuild(0, lineColor, 12f)
+
+        assertEquals(0f, underTest.maxDistanceSquared)
+    }
+
+    @Test
+    fun resolvesColorsCloseToLineColorResolver() {
+        val maxDistance = 100f
+        underTest.rebuild(200, lineColor, maxDistance)
+
+        var distance = 0f
+        while (distance < maxDistance) {
+            val expected = LineColorResolver.resolveLineColorWithAlpha(
+                200, lineColor, maxDistance, distance
+            )
+            val actual = underTest.resolveLineColor(distance * distance)
+
+            assertEquals(expected and 0x00ffffff, actual and 0x00ffffff)
+            assertTrue(abs((expected ushr 24) - (actual ushr 24)) <= 8)
+            distance += 0.25f
+        }
+    }
+
+    @Test
+    fun resolvesLastEntryForDistanceJustBelowMax() {
+        underTest.rebuild(255, lineColor, 3f)
+
+        val result = underTest.resolveLineColor(Math.nextDown(9f))
+
+        assertTrue((result ushr 24) < 8)
+    }
+
+    @Test
+    fun acceptsNoDistanceForZeroLineLength() {
+        underTest.rebuild(255, lineColor, 0f)
+
+        assertEquals(0f, underTest.maxDistanceSquared)
+    }
+
+    @Test
+    fun updatesFromScene() {
+        val scene: Scene = mock {
+            on { it.alpha }.doReturn(255)
+            on { it.lineColor }.doReturn(lineColor)
+            on { it.lineLength }.doReturn(10f)
+        }
+
+        underTest.update(scene)
+
+        assertTrue(underTest.maxDistanceSquared > 98f)
+        assertTrue(underTest.maxDistanceSquared < 100f)
+        assertEquals(lineColor, underTest.resolveLineColor(0f) or 0xff000000.toInt())
+    }
+}
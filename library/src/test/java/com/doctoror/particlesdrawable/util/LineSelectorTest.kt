@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util
+
+import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+
+class LineSelectorTest {
+
+    /**
+     * Particles on a line at 0, 10, 30 and 60.
+     */
+    private val scene: Scene = mock {
+        on { it.density }.doReturn(4)
+        on { it.lineLength }.doReturn(100f)
+        on { it.lineThickness }.doReturn(1f)
+        on { it.alpha }.doReturn(255)
+
+        on { it.getParticleX(0) }.doReturn(0f)
+        on { it.getParticleX(1) }.doReturn(10f)
+        on { it.getParticleX(2) }.doReturn(30f)
+        on { it.getParticleX(3) }.doReturn(60f)
+    }
+
+    private val lineColorTable = LineColorTable().apply { update(scene) }
+
+    private val underTest = LineSelector()
+
+    @Test
+    fun isNotLimitedByDefault() {
+        assertFalse(underTest.isLimited)
+    }
+
+    @Test
+    fun isLimitedWhenAnyLimitIsSet() {
+        underTest.setLimits(LineSelector.UNLIMITED, 2)
+        assertTrue(underTest.isLimited)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsForNegativeMaxLines() {
+        underTest.setLimits(-1, LineSelector.UNLIMITED)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsForNegativeMaxLinesPerParticle() {
+        underTest.setLimits(LineSelector.UNLIMITED, -1)
+    }
+
+    @Test
+    fun selectsAllLinesShortestFirstWhenWithinLimits() {
+        underTest.select(scene, lineColorTable, ViewportCuller())
+
+        assertEquals(6, underTest.selectedCount)
+        for (i in 1 until underTest.selectedCount) {
+            assertTrue(
+                underTest.getSelectedDistanceSquared(i - 1)
+                        <= underTest.getSelectedDistanceSquared(i)
+            )
+        }
+    }
+
+    @Test
+    fun keepsShortestLinesWithinMaxLines() {
+        underTest.setLimits(2, LineSelector.UNLIMITED)
+
+        underTest.select(scene, lineColorTable, ViewportCuller())
+
+        assertEquals(2, underTest.selectedCount)
+        assertLine(0, 0, 1)
+        assertLine(1, 1, 2)
+    }
+
+    @Test
+    fun keepsShortestLinesWithinMaxLinesPerParticle() {
+        underTest.setLimits(LineSelector.UNLIMITED, 1)
+
+        underTest.select(scene, lineColorTable, ViewportCuller())
+
+        // 0-1 is the shortest, 2-3 is the shortest of lines not touching 0 or 1
+        assertEquals(2, underTest.selectedCount)
+        assertLine(0, 0, 1)
+        assertLine(1, 2, 3)
+        assertEquals(900f, underTest.getSelectedDistanceSquared(1))
+    }
+
+    @Test
+    fun selectsNothingForZeroMaxLines() {
+        underTest.setLimits(0, LineSelector.UNLIMITED)
+
+        underTest.select(scene, lineColorTable, ViewportCuller())
+
+        assertEquals(0, underTest.selectedCount)
+    }
+
+    private fun assertLine(index: Int, start: Int, end: Int) {
+        assertEquals(start, underTest.getSelectedStart(index))
+        assertEquals(end, underTest.getSelectedEnd(index))
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.util
+
+import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+
+class ViewportCullerTest {
+
+    private val scene: Scene = mock {
+        on { it.width }.doReturn(100)
+        on { it.height }.doReturn(50)
+    }
+
+    private val underTest = ViewportCuller()
+
+    @Test
+    fun cullsNothingBeforeUpdate() {
+        assertTrue(underTest.isCircleVisible(-100f, -100f, 1f))
+        assertTrue(underTest.isLineVisible(-100f, -100f, -90f, -90f, 1f))
+    }
+
+    @Test
+    fun cullsNothingForSceneWithoutDimensions() {
+        underTest.update(mock(), 0f)
+
+        assertTrue(underTest.isCircleVisible(-100f, -100f, 1f))
+        assertTrue(underTest.isLineVisible(-100f, -100f, -90f, -90f, 1f))
+    }
+
+    @Test
+    fun keepsCirclesIntersectingViewport() {
+        underTest.update(scene, 0f)
+
+        assertTrue(underTest.isCircleVisible(50f, 25f, 1f))
+        assertTrue(underTest.isCircleVisible(-1f, 25f, 2f))
+        assertTrue(underTest.isCircleVisible(50f, 51f, 2f))
+    }
+
+    @Test
+    fun cullsCirclesOutsideViewport() {
+        underTest.update(scene, 0f)
+
+        assertFalse(underTest.isCircleVisible(-3f, 25f, 2f))
+        assertFalse(underTest.isCircleVisible(103f, 25f, 2f))
+        assertFalse(underTest.isCircleVisible(50f, -3f, 2f))
+        assertFalse(underTest.isCircleVisible(50f, 53f, 2f))
+    }
+
+    @Test
+    fun keepsLinesWithBoundingBoxIntersectingViewport() {
+        underTest.update(scene, 0f)
+
+        assertTrue(underTest.isLineVisible(-10f, 25f, 10f, 25f, 1f))
+        assertTrue(underTest.isLineVisible(110f, 60f, 90f, 40f, 1f))
+        assertTrue(underTest.isLineVisible(-5f, -1.5f, -1.5f, -5f, 2f))
+    }
+
+    @Test
+    fun cullsLinesOutsideViewport() {
+        underTest.update(scene, 0f)
+
+        assertFalse(underTest.isLineVisible(-20f, 25f, -10f, 30f, 1f))
+        assertFalse(underTest.isLineVisible(110f, 25f, 120f, 30f, 1f))
+        assertFalse(underTest.isLineVisible(10f, -20f, 20f, -10f, 1f))
+        assertFalse(underTest.isLineVisible(10f, 60f, 20f, 70f, 1f))
+    }
+
+    @Test
+    fun shiftsViewportByTranslation() {
+        underTest.update(scene, 20f)
+
+        assertTrue(underTest.isCircleVisible(-15f, 25f, 1f))
+        assertFalse(underTest.isCircleVisible(90f, 25f, 1f))
+        assertTrue(underTest.isLineVisible(-15f, 25f, -10f, 25f, 1f))
+        assertFalse(underTest.isLineVisible(85f, 25f, 90f, 25f, 1f))
+    }
+}
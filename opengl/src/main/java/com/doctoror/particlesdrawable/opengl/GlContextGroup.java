@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl;
+
+import android.opengl.GLSurfaceView.EGLContextFactory;
+import android.util.Log;
+
+import androidx.annotation.Keep;
+import androidx.annotation.NonNull;
+
+import com.doctoror.particlesdrawable.opengl.renderer.GlResourceCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * A group of EGL contexts that share GL objects. Every context created by this factory shares
+ * objects with the contexts of the group that are still alive, and renderers of all contexts take
+ * programs and particle textures from a single {@link GlResourceCache}, so that views joining the
+ * group neither compile shaders nor upload textures that are already there.
+ * <p>
+ * Pass the same instance to
+ * {@link GlParticlesView#GlParticlesView(android.content.Context, android.util.AttributeSet, GlContextGroup)}
+ * for every view of the group, or install it with
+ * {@link MultipleInstanceSafeGLSurfaceView#setEGLContextFactory(EGLContextFactory)}. All views of
+ * a group must use compatible EGL configs, which means the same multisampling mode.
+ */
+@Keep
+public final class GlContextGroup implements EGLContextFactory {
+
+    private static final String TAG = "GlContextGroup";
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private final GlResourceCache resourceCache = new GlResourceCache();
+
+    private final List<EGLContext> contexts = new ArrayList<>();
+
+    @NonNull
+    public GlResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    @Override
+    public synchronized EGLContext createContext(
+            final EGL10 egl,
+            final EGLDisplay display,
+            final EGLConfig config) {
+        final EGLContext shareContext = contexts.isEmpty()
+                ? EGL10.EGL_NO_CONTEXT
+                : contexts.get(0);
+
+        final EGLContext context = egl.eglCreateContext(
+                display,
+                config,
+                shareContext,
+                new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+        if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+            contexts.add(context);
+        }
+        return context;
+    }
+
+    @Override
+    public synchronized void destroyContext(
+            final EGL10 egl,
+            final EGLDisplay display,
+            final EGLContext context) {
+        if (!egl.eglDestroyContext(display, context)) {
+            Log.e(TAG, "eglDestroyContext failed: " + egl.eglGetError());
+        }
+        contexts.remove(context);
+        if (contexts.isEmpty()) {
+            // Shared objects are destroyed together with the last context of the group
+            resourceCache.clear();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl;
+
+import com.doctoror.particlesdrawable.engine.Engine;
+import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.opengl.renderer.GlFrame;
+import com.doctoror.particlesdrawable.opengl.renderer.GlSceneRenderer;
+import com.doctoror.particlesdrawable.opengl.util.TripleBuffer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Advances the scene and prepares the next frame on a worker thread while the GL thread draws the
+ * previously prepared one. Frames are handed over to the GL thread through a {@link TripleBuffer},
+ * so neither thread waits for the other.
+ */
+final class GlFramePipeline {
+
+    private final TripleBuffer<GlFrame> frames = new TripleBuffer<>(
+            new GlFrame(), new GlFrame(), new GlFrame());
+
+    private final AtomicBoolean framePending = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable r) {
+                    final Thread thread = new Thread(r, "ParticlesFrames");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    @NonNull
+    private final Engine engine;
+
+    @NonNull
+    private final Scene scene;
+
+    @NonNull
+    private final GlSceneRenderer renderer;
+
+    @NonNull
+    private final Object sceneLock;
+
+    private final Runnable prepareFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                synchronized (sceneLock) {
+                    engine.nextFrame();
+                    renderer.prepareFrame(scene, frames.getWriteItem());
+                }
+                frames.publish();
+            } finally {
+                framePending.set(false);
+            }
+        }
+    };
+
+    GlFramePipeline(
+            @NonNull final Engine engine,
+            @NonNull final Scene scene,
+            @NonNull final GlSceneRenderer renderer,
+            @NonNull final Object sceneLock) {
+        this.engine = engine;
+        this.scene = scene;
+        this.renderer = renderer;
+        this.sceneLock = sceneLock;
+    }
+
+    /**
+     * Advances the scene and prepares the next frame on the worker thread, unless a frame is
+     * already being prepared.
+     */
+    void requestFrame() {
+        if (framePending.compareAndSet(false, true)) {
+            executor.execute(prepareFrameRunnable);
+        }
+    }
+
+    /**
+     * Must be called on the GL thread.
+     *
+     * @return the most recently prepared frame, or null if no frame was prepared yet
+     */
+    @Nullable
+    GlFrame acquireFrame() {
+        return frames.acquireReadItem();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
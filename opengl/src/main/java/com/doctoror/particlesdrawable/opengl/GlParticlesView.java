@@ -24,6 +24,7 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 
@@ -41,9 +42,15 @@ import com.doctoror.particlesdrawable.contract.SceneScheduler;
 import com.doctoror.particlesdrawable.engine.Engine;
 import com.doctoror.particlesdrawable.engine.SceneConfigurator;
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneSpec;
 import com.doctoror.particlesdrawable.opengl.chooser.EGLConfigChooserCallback;
 import com.doctoror.particlesdrawable.opengl.chooser.FailsafeEGLConfigChooserFactory;
+import com.doctoror.particlesdrawable.opengl.renderer.GlFrame;
+import com.doctoror.particlesdrawable.opengl.renderer.GlProgramBinaryCache;
 import com.doctoror.particlesdrawable.opengl.renderer.GlSceneRenderer;
+import com.doctoror.particlesdrawable.util.LineSelector;
+
+import java.io.File;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -61,6 +68,10 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
 
     private static final int DEFAULT_SAMPLES = 4;
 
+    private static final long DEFAULT_RETAINED_DETACH_GRACE_PERIOD_MILLIS = 5000L;
+
+    private static final String PROGRAM_BINARY_CACHE_DIRECTORY = "particles_program_binaries";
+
     final Scene scene;
     private final SceneConfigurator sceneConfigurator;
     final GlSceneRenderer renderer;
@@ -74,6 +85,25 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
 
     private volatile Bitmap backgroundTexture;
 
+    /**
+     * Guards the scene when frames are prepared on the pipeline worker thread.
+     */
+    private final Object sceneLock = new Object();
+
+    /**
+     * Scene property changes coalesced until the GL thread applies them.
+     */
+    private final GlSceneChanges sceneChanges;
+
+    @Nullable
+    private GlFramePipeline framePipeline;
+
+    private volatile boolean retainGlContext;
+
+    private volatile boolean frameTimingOnRenderThread;
+
+    private boolean renderingOnSharedThread;
+
     public GlParticlesView(@NonNull final Context context) {
         this(context, null);
     }
@@ -87,12 +117,56 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
             @Nullable final AttributeSet attrs,
             final int samples,
             @Nullable final EGLConfigChooserCallback eglConfigChooserCallback) {
+        this(context, attrs, samples, eglConfigChooserCallback, null, null);
+    }
+
+    /**
+     * Creates a View that renders on the shared thread together with other Views registered to
+     * it, instead of on an own thread with an own EGL context. The EGL config, including
+     * multisampling, is chosen by the {@link SharedGlRenderThread}.
+     *
+     * @param context            the Context
+     * @param attrs              the attributes
+     * @param sharedRenderThread the thread to render on
+     */
+    public GlParticlesView(
+            @NonNull final Context context,
+            @Nullable final AttributeSet attrs,
+            @NonNull final SharedGlRenderThread sharedRenderThread) {
+        this(context, attrs, DEFAULT_SAMPLES, null, sharedRenderThread, null);
+    }
+
+    /**
+     * Creates a View with an own rendering thread and an EGL context that shares programs and
+     * textures with other Views of the group, so that only the first View of the group compiles
+     * shaders and uploads particle textures. All Views of the group must use the same
+     * multisampling mode.
+     *
+     * @param context      the Context
+     * @param attrs        the attributes
+     * @param contextGroup the group to join
+     */
+    public GlParticlesView(
+            @NonNull final Context context,
+            @Nullable final AttributeSet attrs,
+            @NonNull final GlContextGroup contextGroup) {
+        this(context, attrs, DEFAULT_SAMPLES, null, null, contextGroup);
+    }
+
+    private GlParticlesView(
+            @NonNull final Context context,
+            @Nullable final AttributeSet attrs,
+            final int samples,
+            @Nullable final EGLConfigChooserCallback eglConfigChooserCallback,
+            @Nullable final SharedGlRenderThread sharedRenderThread,
+            @Nullable final GlContextGroup contextGroup) {
         super(context, attrs);
         this.scene = new Scene();
         this.sceneConfigurator = new SceneConfigurator();
         this.renderer = new GlSceneRenderer();
         this.engine = new Engine(scene, this, renderer);
-        init(context, attrs, samples, eglConfigChooserCallback);
+        this.sceneChanges = new GlSceneChanges(scene, sceneLock);
+        init(context, attrs, samples, eglConfigChooserCallback, sharedRenderThread, contextGroup);
     }
 
     @VisibleForTesting
@@ -110,20 +184,31 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
         this.scene = scene;
         this.sceneConfigurator = sceneConfigurator;
         this.renderer = sceneRenderer;
-        init(context, attrs, samples, eglConfigChooserCallback);
+        this.sceneChanges = new GlSceneChanges(scene, sceneLock);
+        init(context, attrs, samples, eglConfigChooserCallback, null, null);
     }
 
     private void init(
             @NonNull final Context context,
             @Nullable final AttributeSet attrs,
             int samples,
-            @Nullable final EGLConfigChooserCallback configChooserCallback) {
+            @Nullable final EGLConfigChooserCallback configChooserCallback,
+            @Nullable final SharedGlRenderThread sharedRenderThread,
+            @Nullable final GlContextGroup contextGroup) {
         if (attrs != null) {
             sceneConfigurator.configureSceneFromAttributes(scene, context.getResources(), attrs);
 
             final TypedArray glAttrs = context
                     .obtainStyledAttributes(attrs, R.styleable.GlParticlesView);
             try {
+                final boolean antialiasedLines = glAttrs.getBoolean(
+                        R.styleable.GlParticlesView_antialiasedLines, false);
+                if (antialiasedLines) {
+                    // Lines are smoothed in the shader, so multisampling is not needed
+                    // unless explicitly requested
+                    samples = 0;
+                    renderer.setAntialiasedLines(true);
+                }
                 samples = glAttrs.getInt(R.styleable.GlParticlesView_multisampling, samples);
             } finally {
                 glAttrs.recycle();
@@ -143,6 +228,15 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
         setEGLContextClientVersion(2);
         setEGLConfigChooser(FailsafeEGLConfigChooserFactory
                 .newFailsafeEGLConfigChooser(samples, configChooserCallback));
+        if (sharedRenderThread != null) {
+            setSharedRenderThread(sharedRenderThread);
+            renderer.setSharedContext(true);
+            renderer.setResourceCache(sharedRenderThread.getResourceCache());
+            renderingOnSharedThread = true;
+        } else if (contextGroup != null) {
+            setEGLContextFactory(contextGroup);
+            renderer.setResourceCache(contextGroup.getResourceCache());
+        }
         setRenderer(this);
         setRenderMode(RENDERMODE_WHEN_DIRTY);
 
@@ -234,7 +328,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
         queueEvent(new Runnable() {
             @Override
             public void run() {
-                engine.nextFrame();
+                synchronized (sceneLock) {
+                    engine.nextFrame();
+                }
             }
         });
     }
@@ -247,7 +343,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
         queueEvent(new Runnable() {
             @Override
             public void run() {
-                engine.makeFreshFrame();
+                synchronized (sceneLock) {
+                    engine.makeFreshFrame();
+                }
             }
         });
     }
@@ -260,7 +358,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
         queueEvent(new Runnable() {
             @Override
             public void run() {
-                engine.makeFreshFrameWithParticlesOffscreen();
+                synchronized (sceneLock) {
+                    engine.makeFreshFrameWithParticlesOffscreen();
+                }
             }
         });
     }
@@ -270,12 +370,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      */
     @Override
     public void setFrameDelay(@IntRange(from = 0) final int delay) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setFrameDelay(delay);
-            }
-        });
+        if (sceneChanges.setFrameDelay(delay)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -291,12 +388,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      */
     @Override
     public void setSpeedFactor(@FloatRange(from = 0) final float speedFactor) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setSpeedFactor(speedFactor);
-            }
-        });
+        if (sceneChanges.setSpeedFactor(speedFactor)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -313,13 +407,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
     public void setParticleRadiusRange(
             @FloatRange(from = 0.5f) final float minRadius,
             @FloatRange(from = 0.5f) final float maxRadius) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setParticleRadiusRange(minRadius, maxRadius);
-                renderer.markParticleTextureDirty();
-            }
-        });
+        if (sceneChanges.setParticleRadiusRange(minRadius, maxRadius)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -342,12 +432,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      * {@inheritDoc}
      */
     public void setLineThickness(@FloatRange(from = 1) final float lineThickness) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setLineThickness(lineThickness);
-            }
-        });
+        if (sceneChanges.setLineThickness(lineThickness)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -362,12 +449,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      * {@inheritDoc}
      */
     public void setLineLength(@FloatRange(from = 0) final float lineLength) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setLineLength(lineLength);
-            }
-        });
+        if (sceneChanges.setLineLength(lineLength)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -382,12 +466,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      * {@inheritDoc}
      */
     public void setDensity(@IntRange(from = 0) final int newNum) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setDensity(newNum);
-            }
-        });
+        if (sceneChanges.setDensity(newNum)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -402,13 +483,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      * {@inheritDoc}
      */
     public void setParticleColor(@ColorInt final int color) {
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                scene.setParticleColor(color);
-                renderer.markParticleTextureDirty();
-            }
-        });
+        if (sceneChanges.setParticleColor(color)) {
+            queueEvent(sceneChanges);
+        }
     }
 
     /**
@@ -423,26 +500,316 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
      * {@inheritDoc}
      */
     public void setLineColor(@ColorInt final int lineColor) {
+        if (sceneChanges.setLineColor(lineColor)) {
+            queueEvent(sceneChanges);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLineColor() {
+        return scene.getLineColor();
+    }
+
+    /**
+     * Applies all values of the spec at once, in a single rendering thread event, with at most
+     * one particle buffer reallocation and one particle texture regeneration. Overrides values
+     * set before this call and not yet applied.
+     *
+     * @param spec the spec to apply
+     */
+    public void apply(@NonNull final SceneSpec spec) {
+        if (sceneChanges.apply(spec)) {
+            queueEvent(sceneChanges);
+        }
+    }
+
+    /**
+     * Enables or disables analytic particle motion. When enabled, particle spawn data is uploaded
+     * to the GPU only when a particle is spawned, and particle positions are computed in the
+     * vertex shader. The CPU only resolves exit times and respawns particles that left the scene.
+     * Disabled by default.
+     *
+     * @param analyticMotion true to enable analytic particle motion
+     */
+    public void setAnalyticParticleMotion(final boolean analyticMotion) {
         queueEvent(new Runnable() {
             @Override
             public void run() {
-                scene.setLineColor(lineColor);
+                synchronized (sceneLock) {
+                    engine.setAnalyticMotion(analyticMotion);
+                    renderer.setAnalyticParticleMotion(analyticMotion);
+                }
             }
         });
     }
 
     /**
-     * {@inheritDoc}
+     * Enables or disables drawing particles as antialiased circles computed in the fragment shader,
+     * instead of using a generated circle texture. Gives crisp edges at any radius and requires no
+     * texture memory. Disabled by default.
+     *
+     * @param textureless true to draw particles without a texture
      */
-    @Override
-    public int getLineColor() {
-        return scene.getLineColor();
+    public void setTexturelessParticles(final boolean textureless) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setTexturelessParticles(textureless);
+            }
+        });
+    }
+
+    /**
+     * Enables or disables drawing thick lines as indexed quads, which removes a third of vertex
+     * data for lines with thickness of 2 or more. Disabled by default.
+     *
+     * @param indexed true to draw thick lines as indexed quads
+     */
+    public void setIndexedThickLines(final boolean indexed) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setIndexedThickLines(indexed);
+            }
+        });
+    }
+
+    /**
+     * Enables or disables extruding thick lines in the vertex shader from line endpoints, which
+     * makes the CPU cost per line independent of line thickness. Disabled by default.
+     *
+     * @param shaderExpanded true to extrude thick lines in the vertex shader
+     */
+    public void setShaderExpandedThickLines(final boolean shaderExpanded) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setShaderExpandedThickLines(shaderExpanded);
+            }
+        });
+    }
+
+    /**
+     * Enables or disables antialiasing lines in the fragment shader instead of relying on
+     * multisampling. Multisampling is chosen when the view is created, so to avoid its cost pass
+     * zero samples to {@link #GlParticlesView(Context, AttributeSet, int, EGLConfigChooserCallback)}
+     * or set the {@code antialiasedLines} attribute, which disables multisampling unless
+     * {@code multisampling} is set explicitly. Disabled by default.
+     *
+     * @param antialiased true to antialias lines in the fragment shader
+     */
+    public void setAntialiasedLines(final boolean antialiased) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setAntialiasedLines(antialiased);
+            }
+        });
+    }
+
+    /**
+     * Enables or disables resolving line vertices on worker threads. Speeds up frames with many
+     * particles on multi-core devices. Disabled by default.
+     *
+     * @param parallel true to resolve line vertices on worker threads
+     */
+    public void setParallelLineGeneration(final boolean parallel) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setParallelLineGeneration(parallel);
+            }
+        });
+    }
+
+    /**
+     * Limits the number of connection lines drawn per frame. When over budget, the shortest, most
+     * opaque lines are kept, so that a cluster of particles cannot blow the frame time. Lines are
+     * resolved on a single thread while limited. Unlimited by default.
+     *
+     * @param maxLines            the max number of lines per frame, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @param maxLinesPerParticle the max number of lines from and to a single particle, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setLineBudget(
+            @IntRange(from = 0) final int maxLines,
+            @IntRange(from = 0) final int maxLinesPerParticle) {
+        if (maxLines < 0 || maxLinesPerParticle < 0) {
+            throw new IllegalArgumentException("Line budget must not be negative");
+        }
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setLineBudget(maxLines, maxLinesPerParticle);
+            }
+        });
+    }
+
+    /**
+     * Sets how often particles are reordered along the Z-order curve, so that particles close in
+     * the scene are close in memory. Speeds up drawing connection lines with large particle
+     * counts. Disabled by default.
+     *
+     * @param frames the number of frames between reorders, or 0 to never reorder
+     * @throws IllegalArgumentException if frames is negative
+     */
+    public void setParticleReorderInterval(@IntRange(from = 0) final int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames must not be negative");
+        }
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (sceneLock) {
+                    engine.setParticleReorderInterval(frames);
+                }
+            }
+        });
+    }
+
+    /**
+     * Enables or disables scaling the particle count with the view area, so that particles are
+     * spread equally and the cost of a frame per pixel stays the same on any screen size. While
+     * enabled, the density is recomputed on every size change, replacing the density set with
+     * {@link #setDensity(int)}. Disabled by default.
+     *
+     * @param particlesPerSquareDp the number of particles per square dp, or 0 to disable scaling
+     * @param minDensity           the min particle count
+     * @param maxDensity           the max particle count
+     * @throws IllegalArgumentException if any of the values is negative, or the max density is
+     *                                  less than the min density
+     */
+    public void setDensityScaling(
+            @FloatRange(from = 0) final float particlesPerSquareDp,
+            @IntRange(from = 0) final int minDensity,
+            @IntRange(from = 0) final int maxDensity) {
+        if (particlesPerSquareDp < 0f || minDensity < 0 || maxDensity < minDensity) {
+            throw new IllegalArgumentException("Invalid density scaling parameters");
+        }
+        final float displayDensity = getResources().getDisplayMetrics().density;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (sceneLock) {
+                    engine.setDensityScaling(
+                            particlesPerSquareDp, displayDensity, minDensity, maxDensity);
+                }
+            }
+        });
+    }
+
+    /**
+     * Enables or disables pipelined frames. When enabled, the scene is advanced and the next
+     * frame's line vertices are resolved on a worker thread while the GL thread draws the current
+     * frame, so that the CPU and the GPU work in parallel. The drawn frame lags one frame behind
+     * the simulation. Disabled by default.
+     *
+     * @param pipelined true to prepare frames on a worker thread
+     */
+    public void setPipelinedFrames(final boolean pipelined) {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                if (pipelined && framePipeline == null) {
+                    framePipeline = new GlFramePipeline(engine, scene, renderer, sceneLock);
+                } else if (!pipelined && framePipeline != null) {
+                    framePipeline.shutdown();
+                    framePipeline = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Enables or disables retaining the GL thread, the EGL context and all GL resources while this
+     * View is stopped or briefly detached, for example when paging through a ViewPager or
+     * scrolling a RecyclerView. When enabled, {@link #stop()} keeps compiled programs, textures
+     * and buffers, and {@link #start()} resumes without recompiling shaders, unless the device
+     * could not preserve the EGL context. The rendering thread is kept for
+     * {@value #DEFAULT_RETAINED_DETACH_GRACE_PERIOD_MILLIS} ms after detaching from window.
+     * Disabled by default.
+     *
+     * @param retain true to retain the GL context across stop and detach
+     * @see #setRetainGlContext(boolean, long)
+     */
+    public void setRetainGlContext(final boolean retain) {
+        setRetainGlContext(retain, DEFAULT_RETAINED_DETACH_GRACE_PERIOD_MILLIS);
+    }
+
+    /**
+     * Same as {@link #setRetainGlContext(boolean)}, keeping the rendering thread for the specified
+     * time after detaching from window. This replaces the value set with
+     * {@link #setDetachGracePeriod(long)}, and disabling retaining resets it to 0, so call
+     * this method rather than {@link #setDetachGracePeriod(long)} to tune how long the context
+     * outlives a detach.
+     *
+     * @param retain                  true to retain the GL context across stop and detach
+     * @param detachGracePeriodMillis the time to keep the thread after detach, in milliseconds,
+     *                                ignored when not retaining
+     * @throws IllegalArgumentException if the grace period is negative
+     */
+    public void setRetainGlContext(
+            final boolean retain,
+            @IntRange(from = 0) final long detachGracePeriodMillis) {
+        if (detachGracePeriodMillis < 0) {
+            throw new IllegalArgumentException("detachGracePeriodMillis must not be negative");
+        }
+        retainGlContext = retain;
+        setPreserveEGLContextOnPause(retain);
+        setDetachGracePeriod(retain ? detachGracePeriodMillis : 0L);
+    }
+
+    /**
+     * Enables or disables timing frame delays on the rendering thread. When enabled, the next
+     * frame is scheduled by a timed wait of the rendering thread instead of a message posted to
+     * the main thread, so that the animation keeps running at the configured frame rate while the
+     * main thread is busy, for example inflating list items. Disabled by default.
+     *
+     * @param enabled true to time frame delays on the rendering thread
+     * @see #setFrameDelay(int)
+     */
+    public void setFrameTimingOnRenderThread(final boolean enabled) {
+        frameTimingOnRenderThread = enabled;
+        if (enabled) {
+            removeCallbacks(requestRenderRunnable);
+        } else {
+            cancelDelayedRender();
+        }
+    }
+
+    /**
+     * Enables or disables the persistent program binary cache. When enabled, linked programs are
+     * stored in the application cache directory, and later cold starts load them instead of
+     * compiling shaders, as long as the driver accepts the stored binaries. Requires an OpenGL ES
+     * 3.0 capable device, otherwise shaders are always compiled. Takes effect for programs created
+     * after this call, so it should be called before the View is attached. Disabled by default.
+     *
+     * @param enabled true to cache program binaries on disk
+     */
+    public void setProgramBinaryCacheEnabled(final boolean enabled) {
+        final GlProgramBinaryCache cache = enabled
+                ? new GlProgramBinaryCache(
+                new File(getContext().getCacheDir(), PROGRAM_BINARY_CACHE_DIRECTORY))
+                : null;
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                renderer.setProgramBinaryCache(cache);
+            }
+        });
     }
 
     @Override
     public void scheduleNextFrame(final long delay) {
         if (delay == 0) {
             requestRender();
+        } else if (frameTimingOnRenderThread) {
+            requestRenderDelayed(delay);
         } else {
             removeCallbacks(requestRenderRunnable);
             postDelayed(requestRenderRunnable, delay);
@@ -451,7 +818,9 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
 
     @Override
     public void unscheduleNextFrame() {
-
+        if (frameTimingOnRenderThread) {
+            cancelDelayedRender();
+        }
     }
 
     /**
@@ -473,12 +842,40 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
     public void stop() {
         engine.stop();
         onPause();
-        queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                renderer.recycle();
-            }
-        });
+        recycleIfNotRetainingGlContext();
+    }
+
+    /**
+     * Like {@link #stop()}, but does not block the calling thread while the rendering thread
+     * finishes the frame it is drawing, so it is safe to call from {@code Activity.onPause}
+     * when frames are expensive.
+     *
+     * @param timeoutMillis the time to wait for the rendering thread to pause
+     * @param listener      notified on the main thread when the rendering thread has paused or
+     *                      the timeout elapsed, may be null
+     * @see #onPauseAsync(long, OnPauseCompleteListener)
+     */
+    public void stopAsync(
+            final long timeoutMillis,
+            @Nullable final OnPauseCompleteListener listener) {
+        engine.stop();
+        onPauseAsync(timeoutMillis, listener);
+        recycleIfNotRetainingGlContext();
+    }
+
+    private void recycleIfNotRetainingGlContext() {
+        if (!retainGlContext) {
+            queueEvent(recycleRendererRunnable);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (renderingOnSharedThread) {
+            // The shared context outlives this View
+            queueEvent(recycleRendererRunnable);
+        }
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -488,15 +885,22 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
 
     @Override
     public void onSurfaceCreated(@NonNull final GL10 gl, @NonNull final EGLConfig config) {
-        renderer.recycle();
+        synchronized (sceneLock) {
+            renderer.recycle();
+        }
         renderer.setupGl();
         backgroundColorDirty = true;
         backgroundTextureDirty = true;
+
+        // Applies changes left pending by a rendering thread that exited before running them
+        sceneChanges.run();
     }
 
     @Override
     public void onSurfaceChanged(@NonNull final GL10 gl, final int width, final int height) {
-        engine.setDimensions(width, height);
+        synchronized (sceneLock) {
+            engine.setDimensions(width, height);
+        }
         renderer.setDimensions(width, height);
         backgroundColorDirty = true;
         backgroundTextureDirty = true;
@@ -512,10 +916,47 @@ public class GlParticlesView extends OnPauseFixAttemptGLSurfaceView implements
             renderer.setBackgroundTexture(backgroundTexture);
             backgroundTextureDirty = false;
         }
-        engine.draw();
-        engine.run();
+        if (framePipeline != null) {
+            drawPipelinedFrame(framePipeline);
+        } else {
+            synchronized (sceneLock) {
+                engine.draw();
+                engine.run();
+            }
+        }
+    }
+
+    private void drawPipelinedFrame(@NonNull final GlFramePipeline pipeline) {
+        final long startTime = SystemClock.uptimeMillis();
+        final GlFrame frame = pipeline.acquireFrame();
+        if (frame != null) {
+            renderer.drawFrame(frame);
+        } else {
+            // Nothing was prepared yet, draw the current scene directly
+            synchronized (sceneLock) {
+                engine.draw();
+            }
+        }
+        if (engine.isRunning()) {
+            pipeline.requestFrame();
+            final long drawDuration = SystemClock.uptimeMillis() - startTime;
+            scheduleNextFrame(Math.max(scene.getFrameDelay() - drawDuration, 0L));
+        }
     }
 
+    /**
+     * Recycles the renderer, serialized with frames being prepared on the pipeline worker thread,
+     * which uses the line workers released here.
+     */
+    private final Runnable recycleRendererRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (sceneLock) {
+                renderer.recycle();
+            }
+        }
+    };
+
     private final Runnable requestRenderRunnable = new Runnable() {
         @Override
         public void run() {
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl;
+
+import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneSpec;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+/**
+ * Scene property changes waiting to be applied on the GL thread. Setters store the latest value
+ * of a property and mark it dirty, so changes made between two GL thread events coalesce and
+ * only the latest value of each property is applied. A single instance is queued as an event,
+ * and only when the first change of a batch is made, so that setting properties allocates
+ * nothing.
+ */
+final class GlSceneChanges implements Runnable {
+
+    private static final int FRAME_DELAY = 1;
+    private static final int SPEED_FACTOR = 1 << 1;
+    private static final int PARTICLE_RADIUS_RANGE = 1 << 2;
+    private static final int LINE_THICKNESS = 1 << 3;
+    private static final int LINE_LENGTH = 1 << 4;
+    private static final int DENSITY = 1 << 5;
+    private static final int PARTICLE_COLOR = 1 << 6;
+    private static final int LINE_COLOR = 1 << 7;
+    private static final int SPEC = 1 << 8;
+
+    private final AtomicInteger dirty = new AtomicInteger();
+
+    @NonNull
+    private final Scene scene;
+
+    @NonNull
+    private final Object sceneLock;
+
+    private volatile int frameDelay;
+    private volatile float speedFactor;
+
+    /**
+     * Both radii packed in a single value so that they are never applied from different calls.
+     */
+    private volatile long particleRadiusRange;
+
+    private volatile float lineThickness;
+    private volatile float lineLength;
+    private volatile int density;
+
+    @ColorInt
+    private volatile int particleColor;
+
+    @ColorInt
+    private volatile int lineColor;
+
+    private volatile SceneSpec spec;
+
+    GlSceneChanges(
+            @NonNull final Scene scene,
+            @NonNull final Object sceneLock) {
+        this.scene = scene;
+        this.sceneLock = sceneLock;
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setFrameDelay(final int frameDelay) {
+        this.frameDelay = frameDelay;
+        return markDirty(FRAME_DELAY);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setSpeedFactor(final float speedFactor) {
+        this.speedFactor = speedFactor;
+        return markDirty(SPEED_FACTOR);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setParticleRadiusRange(final float minRadius, final float maxRadius) {
+        particleRadiusRange = ((long) Float.floatToRawIntBits(minRadius) << 32)
+                | (Float.floatToRawIntBits(maxRadius) & 0xffffffffL);
+        return markDirty(PARTICLE_RADIUS_RANGE);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setLineThickness(final float lineThickness) {
+        this.lineThickness = lineThickness;
+        return markDirty(LINE_THICKNESS);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setLineLength(final float lineLength) {
+        this.lineLength = lineLength;
+        return markDirty(LINE_LENGTH);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setDensity(final int density) {
+        this.density = density;
+        return markDirty(DENSITY);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setParticleColor(@ColorInt final int particleColor) {
+        this.particleColor = particleColor;
+        return markDirty(PARTICLE_COLOR);
+    }
+
+    /**
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean setLineColor(@ColorInt final int lineColor) {
+        this.lineColor = lineColor;
+        return markDirty(LINE_COLOR);
+    }
+
+    /**
+     * Replaces all pending changes with the spec, so that setters called before this are
+     * overridden by the spec and setters called after this override it.
+     *
+     * @return true if this is the first pending change, and this instance must be queued
+     */
+    boolean apply(@NonNull final SceneSpec spec) {
+        this.spec = spec;
+        while (true) {
+            final int current = dirty.get();
+            if (dirty.compareAndSet(current, SPEC)) {
+                return current == 0;
+            }
+        }
+    }
+
+    private boolean markDirty(final int property) {
+        while (true) {
+            final int current = dirty.get();
+            if ((current & property) != 0) {
+                return false;
+            }
+            if (dirty.compareAndSet(current, current | property)) {
+                return current == 0;
+            }
+        }
+    }
+
+    /**
+     * Applies pending changes. Must be called on the GL thread.
+     */
+    @Override
+    public void run() {
+        synchronized (sceneLock) {
+            // Values set after this point are applied now or by the next queued run
+            final int changes = dirty.getAndSet(0);
+            if (changes == 0) {
+                return;
+            }
+            if ((changes & SPEC) != 0) {
+                scene.apply(spec);
+            }
+            if ((changes & FRAME_DELAY) != 0) {
+                scene.setFrameDelay(frameDelay);
+            }
+            if ((changes & SPEED_FACTOR) != 0) {
+                scene.setSpeedFactor(speedFactor);
+            }
+            if ((changes & PARTICLE_RADIUS_RANGE) != 0) {
+                final long range = particleRadiusRange;
+                scene.setParticleRadiusRange(
+                        Float.intBitsToFloat((int) (range >>> 32)),
+                        Float.intBitsToFloat((int) range));
+            }
+            if ((changes & LINE_THICKNESS) != 0) {
+                scene.setLineThickness(lineThickness);
+            }
+            if ((changes & LINE_LENGTH) != 0) {
+                scene.setLineLength(lineLength);
+            }
+            if ((changes & DENSITY) != 0) {
+                scene.setDensity(density);
+            }
+            if ((changes & PARTICLE_COLOR) != 0) {
+                scene.setParticleColor(particleColor);
+            }
+            if ((changes & LINE_COLOR) != 0) {
+                scene.setLineColor(lineColor);
+            }
+        }
+    }
+}
@@ -24,6 +24,9 @@ import android.opengl.GLSurfaceView.EGLContextFactory;
 import android.opengl.GLSurfaceView.EGLWindowSurfaceFactory;
 import android.opengl.GLSurfaceView.GLWrapper;
 import android.opengl.GLSurfaceView.Renderer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -34,7 +37,7 @@ import androidx.annotation.Nullable;
 
 import java.io.Writer;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGL11;
@@ -80,6 +83,11 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
      */
     public final static int RENDERMODE_CONTINUOUSLY = 1;
 
+    /**
+     * The value of a render deadline when no delayed render is requested.
+     */
+    final static long NO_RENDER_DEADLINE = -1L;
+
     /**
      * Check glError() after every GL call and throw an exception if glError indicates
      * that an error has occurred. This can be used to help track down which OpenGL ES call
@@ -215,6 +223,32 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         return mPreserveEGLContextOnPause;
     }
 
+    /**
+     * Sets for how long the rendering thread, and with it the EGL context, is kept alive after
+     * this view is detached from window. If the view is attached again within this period, the
+     * thread is reused and the renderer does not receive
+     * {@link Renderer#onSurfaceCreated(GL10, EGLConfig)} unless the EGL context was lost.
+     * <p>
+     * The default is 0, which stops the thread as soon as the view is detached. Has no effect
+     * when rendering on a {@link SharedGlRenderThread}, which keeps its EGL context for as long as
+     * any view is attached.
+     *
+     * @param gracePeriodMillis the time to keep the thread after detach, in milliseconds
+     */
+    public void setDetachGracePeriod(final long gracePeriodMillis) {
+        if (gracePeriodMillis < 0) {
+            throw new IllegalArgumentException("gracePeriodMillis must not be negative");
+        }
+        mDetachGracePeriod = gracePeriodMillis;
+    }
+
+    /**
+     * @return the time the rendering thread is kept alive after detach, in milliseconds
+     */
+    public long getDetachGracePeriod() {
+        return mDetachGracePeriod;
+    }
+
     /**
      * Set the renderer associated with this view. Also starts the thread that
      * will call the renderer, which in turn causes the rendering to start.
@@ -251,10 +285,38 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
             mEGLWindowSurfaceFactory = new DefaultWindowSurfaceFactory();
         }
         mRenderer = renderer;
-        mGLThread = new GLThread(mThisWeakRef);
+        mGLThread = newRenderThread();
         mGLThread.start();
     }
 
+    /**
+     * Renders this view on a {@link SharedGlRenderThread} together with other views registered
+     * to it, instead of on an own thread with an own EGL context. The {@link EGLConfigChooser},
+     * {@link EGLContextFactory}, {@link EGLWindowSurfaceFactory} and debug flags of this view are
+     * not used in this mode.
+     * <p>If this method is called, it must be called before {@link #setRenderer(Renderer)}
+     * is called.
+     *
+     * @param sharedRenderThread the shared thread to render on
+     */
+    public void setSharedRenderThread(@Nullable SharedGlRenderThread sharedRenderThread) {
+        checkRenderThreadState();
+        mSharedRenderThread = sharedRenderThread;
+    }
+
+    private RenderThread newRenderThread() {
+        return mSharedRenderThread != null
+                ? mSharedRenderThread.newTarget(mThisWeakRef)
+                : new GLThread(mThisWeakRef);
+    }
+
+    /**
+     * @return the renderer to be called by a {@link SharedGlRenderThread}
+     */
+    Renderer getRenderer() {
+        return mRenderer;
+    }
+
     /**
      * Install a custom EGLContextFactory.
      * <p>If this method is
@@ -375,6 +437,29 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         mGLThread.requestRender();
     }
 
+    /**
+     * Request that the renderer render a frame once the delay elapses. The delay is timed by the
+     * rendering thread itself, so the frame is rendered on time even when the main thread is
+     * busy. Replaces a previously requested delayed render.
+     * May be called
+     * from any thread. Must not be called before a renderer has been set.
+     *
+     * @param delayMillis the delay in milliseconds, renders immediately if 0 or less
+     */
+    public void requestRenderDelayed(final long delayMillis) {
+        mGLThread.requestRenderDelayed(delayMillis);
+    }
+
+    /**
+     * Cancels the render requested with {@link #requestRenderDelayed(long)}, if it is still
+     * pending.
+     * May be called
+     * from any thread. Must not be called before a renderer has been set.
+     */
+    public void cancelDelayedRender() {
+        mGLThread.cancelDelayedRender();
+    }
+
     /**
      * This method is part of the SurfaceHolder.Callback interface, and is
      * not normally called or subclassed by clients of EncapsulatedGLSurfaceView.
@@ -437,6 +522,19 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         mGLThread.onPause();
     }
 
+    /**
+     * Requests the rendering thread to pause, like {@link #onPause()}, but returns without waiting
+     * for the thread to finish the frame it is drawing.
+     * Must not be called before a renderer has been set.
+     *
+     * @param onPaused runs on the rendering thread once it has paused, or on the calling thread
+     *                 if the rendering thread has already exited. Does not run if the thread is
+     *                 resumed before it pauses.
+     */
+    void requestPause(@Nullable final Runnable onPaused) {
+        mGLThread.requestPause(onPaused);
+    }
+
     /**
      * Resumes the rendering thread, re-creating the OpenGL context if necessary. It
      * is the counterpart to {@link #onPause()}.
@@ -471,12 +569,16 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         if (LOG_ATTACH_DETACH) {
             Log.d(TAG, "onAttachedToWindow reattach =" + mDetached);
         }
-        if (mDetached && (mRenderer != null)) {
+        if (mExitPending) {
+            // Reattached within the grace period, the thread is still alive
+            mMainHandler.removeCallbacks(mExitRunnable);
+            mExitPending = false;
+        } else if (mDetached && (mRenderer != null)) {
             int renderMode = RENDERMODE_CONTINUOUSLY;
             if (mGLThread != null) {
                 renderMode = mGLThread.getRenderMode();
             }
-            mGLThread = new GLThread(mThisWeakRef);
+            mGLThread = newRenderThread();
             if (renderMode != RENDERMODE_CONTINUOUSLY) {
                 mGLThread.setRenderMode(renderMode);
             }
@@ -491,12 +593,27 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
             Log.d(TAG, "onDetachedFromWindow");
         }
         if (mGLThread != null) {
-            mGLThread.requestExitAndWait();
+            if (mDetachGracePeriod > 0 && mSharedRenderThread == null) {
+                mExitPending = true;
+                mMainHandler.postDelayed(mExitRunnable, mDetachGracePeriod);
+            } else {
+                mGLThread.requestExitAndWait();
+            }
         }
         mDetached = true;
         super.onDetachedFromWindow();
     }
 
+    private final Runnable mExitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mExitPending) {
+                mExitPending = false;
+                mGLThread.requestExitAndWait();
+            }
+        }
+    };
+
     // ----------------------------------------------------------------------
 
     private class DefaultContextFactory implements EGLContextFactory {
@@ -778,6 +895,42 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
 
     }
 
+    /**
+     * The thread that calls the {@link Renderer} of a single view.
+     */
+    interface RenderThread {
+
+        void start();
+
+        void setRenderMode(int renderMode);
+
+        int getRenderMode();
+
+        void requestRender();
+
+        void requestRenderDelayed(long delayMillis);
+
+        void cancelDelayedRender();
+
+        void requestRenderAndNotify(Runnable finishDrawing);
+
+        void surfaceCreated();
+
+        void surfaceDestroyed();
+
+        void onPause();
+
+        void requestPause(@Nullable Runnable onPaused);
+
+        void onResume();
+
+        void onWindowResize(int w, int h);
+
+        void queueEvent(Runnable r);
+
+        void requestExitAndWait();
+    }
+
     /**
      * A generic GL Thread. Takes care of initializing EGL and GL. Delegates
      * to a Renderer instance to do the actual drawing. Can be configured to
@@ -786,7 +939,7 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
      * All potentially blocking synchronization is done through the
      * sGLThreadManager object. This avoids multiple-lock ordering issues.
      */
-    static class GLThread extends Thread {
+    static class GLThread extends Thread implements RenderThread {
 
         private final GLThreadManager mGLThreadManager = new GLThreadManager();
 
@@ -867,8 +1020,8 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
                                 return;
                             }
 
-                            if (!mEventQueue.isEmpty()) {
-                                event = mEventQueue.remove(0);
+                            event = mEventQueue.poll();
+                            if (event != null) {
                                 break;
                             }
 
@@ -922,6 +1075,13 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
                                 }
                             }
 
+                            // Acknowledge an asynchronous pause request
+                            if (mPaused && mOnPaused != null) {
+                                final Runnable onPaused = mOnPaused;
+                                mOnPaused = null;
+                                onPaused.run();
+                            }
+
                             // Have we lost the SurfaceView surface?
                             if ((!mHasSurface) && (!mWaitingForSurface)) {
                                 if (LOG_SURFACE) {
@@ -959,6 +1119,16 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
                                 mFinishDrawingRunnable = null;
                             }
 
+                            // Has the delayed render become due?
+                            long renderDelay = 0;
+                            if (mRenderDeadline != NO_RENDER_DEADLINE) {
+                                renderDelay = mRenderDeadline - SystemClock.uptimeMillis();
+                                if (renderDelay <= 0) {
+                                    mRenderDeadline = NO_RENDER_DEADLINE;
+                                    mRequestRender = true;
+                                }
+                            }
+
                             // Ready to draw?
                             if (readyToDraw()) {
 
@@ -1032,9 +1202,20 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
                                         + " mWidth: " + mWidth
                                         + " mHeight: " + mHeight
                                         + " mRequestRender: " + mRequestRender
-                                        + " mRenderMode: " + mRenderMode);
+                                        + " mRenderMode: " + mRenderMode
+                                        + " renderDelay: " + renderDelay);
+                            }
+                            // Events are queued without the lock, so announce the wait first and
+                            // check the queue again to not miss an event queued in between.
+                            mWaitingForEvents = true;
+                            if (mEventQueue.isEmpty()) {
+                                if (renderDelay > 0) {
+                                    mGLThreadManager.wait(renderDelay);
+                                } else {
+                                    mGLThreadManager.wait();
+                                }
                             }
-                            mGLThreadManager.wait();
+                            mWaitingForEvents = false;
                         }
                     } // end of synchronized(sGLThreadManager)
 
@@ -1180,6 +1361,23 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
             }
         }
 
+        public void requestRenderDelayed(final long delayMillis) {
+            if (delayMillis <= 0) {
+                requestRender();
+                return;
+            }
+            synchronized (mGLThreadManager) {
+                mRenderDeadline = SystemClock.uptimeMillis() + delayMillis;
+                mGLThreadManager.notifyAll();
+            }
+        }
+
+        public void cancelDelayedRender() {
+            synchronized (mGLThreadManager) {
+                mRenderDeadline = NO_RENDER_DEADLINE;
+            }
+        }
+
         public void requestRenderAndNotify(Runnable finishDrawing) {
             synchronized (mGLThreadManager) {
                 // If we are already on the GL thread, this means a client callback
@@ -1256,12 +1454,30 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
             }
         }
 
+        public void requestPause(@Nullable final Runnable onPaused) {
+            synchronized (mGLThreadManager) {
+                if (LOG_PAUSE_RESUME) {
+                    Log.i("GLThread", "requestPause tid=" + getId());
+                }
+                if (mExited) {
+                    if (onPaused != null) {
+                        onPaused.run();
+                    }
+                    return;
+                }
+                mRequestPaused = true;
+                mOnPaused = onPaused;
+                mGLThreadManager.notifyAll();
+            }
+        }
+
         public void onResume() {
             synchronized (mGLThreadManager) {
                 if (LOG_PAUSE_RESUME) {
                     Log.i("GLThread", "onResume tid=" + getId());
                 }
                 mRequestPaused = false;
+                mOnPaused = null;
                 mRequestRender = true;
                 mRenderComplete = false;
                 mGLThreadManager.notifyAll();
@@ -1342,9 +1558,13 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
             if (r == null) {
                 throw new IllegalArgumentException("r must not be null");
             }
-            synchronized (mGLThreadManager) {
-                mEventQueue.add(r);
-                mGLThreadManager.notifyAll();
+            mEventQueue.offer(r);
+            // Only a waiting thread needs the lock to be taken for a wake up, a running thread
+            // polls the queue before it waits again
+            if (mWaitingForEvents) {
+                synchronized (mGLThreadManager) {
+                    mGLThreadManager.notifyAll();
+                }
             }
         }
 
@@ -1354,6 +1574,7 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         private boolean mExited;
         private boolean mRequestPaused;
         private boolean mPaused;
+        private Runnable mOnPaused;
         private boolean mHasSurface;
         private boolean mSurfaceIsBad;
         private boolean mWaitingForSurface;
@@ -1365,14 +1586,24 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
         private int mHeight;
         private int mRenderMode;
         private boolean mRequestRender;
+        private long mRenderDeadline = NO_RENDER_DEADLINE;
         private boolean mWantRenderNotification;
         private boolean mRenderComplete;
-        private final ArrayList<Runnable> mEventQueue = new ArrayList<Runnable>();
         private boolean mSizeChanged = true;
         private Runnable mFinishDrawingRunnable = null;
 
         // End of member variables protected by the sGLThreadManager monitor.
 
+        /**
+         * Events queued from any thread without taking the sGLThreadManager monitor.
+         */
+        private final ConcurrentLinkedQueue<Runnable> mEventQueue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Written by the GL thread inside the sGLThreadManager monitor only.
+         */
+        private volatile boolean mWaitingForEvents;
+
         private EglHelper mEglHelper;
 
         /**
@@ -1447,7 +1678,8 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
 
     private final WeakReference<MultipleInstanceSafeGLSurfaceView> mThisWeakRef =
             new WeakReference<>(this);
-    private GLThread mGLThread;
+    private RenderThread mGLThread;
+    private SharedGlRenderThread mSharedRenderThread;
     private Renderer mRenderer;
     private boolean mDetached;
     private EGLConfigChooser mEGLConfigChooser;
@@ -1457,4 +1689,7 @@ class MultipleInstanceSafeGLSurfaceView extends SurfaceView implements SurfaceHo
     private int mDebugFlags;
     private int mEGLContextClientVersion;
     private boolean mPreserveEGLContextOnPause;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private long mDetachGracePeriod;
+    private boolean mExitPending;
 }
@@ -1,6 +1,8 @@
 package com.doctoror.particlesdrawable.opengl;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 
 import androidx.annotation.NonNull;
@@ -17,6 +19,8 @@ public class OnPauseFixAttemptGLSurfaceView extends MultipleInstanceSafeGLSurfac
     private final NotifyPause notifyPause = new NotifyPause();
     final boolean[] pausing = new boolean[1];
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     public OnPauseFixAttemptGLSurfaceView(@NonNull Context context) {
         super(context);
     }
@@ -41,6 +45,82 @@ public class OnPauseFixAttemptGLSurfaceView extends MultipleInstanceSafeGLSurfac
         }
     }
 
+    /**
+     * Pauses the rendering thread like {@link #onPause()}, but without blocking the calling
+     * thread while the rendering thread finishes the frame it is drawing. The listener is
+     * notified on the main thread once the rendering thread has paused, or when the timeout
+     * elapses first, whichever happens earlier. The pause still takes effect after the timeout
+     * unless {@link #onResume()} is called.
+     *
+     * @param timeoutMillis the time to wait for the rendering thread to pause
+     * @param listener      the listener to notify, may be null
+     */
+    public void onPauseAsync(
+            final long timeoutMillis,
+            @Nullable final OnPauseCompleteListener listener) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+        }
+        if (listener == null) {
+            requestPause(null);
+            return;
+        }
+        final PendingPause pendingPause = new PendingPause(listener);
+        mainHandler.postDelayed(pendingPause.timeout, timeoutMillis);
+        requestPause(pendingPause.paused);
+    }
+
+    /**
+     * Notified when {@link #onPauseAsync(long, OnPauseCompleteListener)} completes.
+     */
+    public interface OnPauseCompleteListener {
+
+        /**
+         * @param paused true if the rendering thread has paused, false if the timeout elapsed
+         *               first
+         */
+        void onPauseComplete(boolean paused);
+    }
+
+    private final class PendingPause {
+
+        private final OnPauseCompleteListener listener;
+
+        private boolean complete;
+
+        final Runnable paused = new Runnable() {
+            @Override
+            public void run() {
+                // Called on the rendering thread
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mainHandler.removeCallbacks(timeout);
+                        complete(true);
+                    }
+                });
+            }
+        };
+
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                complete(false);
+            }
+        };
+
+        PendingPause(@NonNull final OnPauseCompleteListener listener) {
+            this.listener = listener;
+        }
+
+        private void complete(final boolean paused) {
+            if (!complete) {
+                complete = true;
+                listener.onPauseComplete(paused);
+            }
+        }
+    }
+
     private final class NotifyPause implements Runnable {
 
         @Override
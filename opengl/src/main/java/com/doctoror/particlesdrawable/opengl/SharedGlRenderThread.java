@@ -0,0 +1,695 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl;
+
+import android.opengl.GLSurfaceView.EGLConfigChooser;
+import android.opengl.GLSurfaceView.Renderer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Keep;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doctoror.particlesdrawable.opengl.chooser.FailsafeEGLConfigChooserFactory;
+import com.doctoror.particlesdrawable.opengl.renderer.GlResourceCache;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGL11;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * A single rendering thread with a single EGL context that renders every registered view in turn,
+ * switching between their window surfaces with eglMakeCurrent. Use it when several views are
+ * shown at the same time to avoid a thread and an EGL context per view.
+ * <p>
+ * Register views by passing the same instance to
+ * {@link MultipleInstanceSafeGLSurfaceView#setSharedRenderThread(SharedGlRenderThread)}, or to
+ * {@link GlParticlesView#GlParticlesView(android.content.Context, android.util.AttributeSet, SharedGlRenderThread)}.
+ * The thread is started when the first view is registered and exits, releasing the EGL context,
+ * when the last one is detached from window. Events queued by a view before it is detached are
+ * still run, so views may release their GL resources from the shared context on detach.
+ * <p>
+ * Renderers share the GL state of the context, so each renderer must set all state it depends on
+ * before drawing a frame. Renderers may share programs and textures through
+ * {@link #getResourceCache()}.
+ */
+@Keep
+public final class SharedGlRenderThread {
+
+    private static final String TAG = "SharedGlRenderThread";
+
+    private static final int DEFAULT_SAMPLES = 4;
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private static final String EXTENSION_SURFACELESS_CONTEXT = "EGL_KHR_surfaceless_context";
+
+    private static final long NO_RENDER_DEADLINE =
+            MultipleInstanceSafeGLSurfaceView.NO_RENDER_DEADLINE;
+
+    private final Object lock = new Object();
+
+    private final List<Target> targets = new ArrayList<>();
+
+    private final GlResourceCache resourceCache = new GlResourceCache();
+
+    @NonNull
+    private final EGLConfigChooser configChooser;
+
+    @Nullable
+    private LoopThread thread;
+
+    public SharedGlRenderThread() {
+        this(DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param samples multisampling mode for all views. Will fallback to lower multisampling mode
+     *                or no multisampling if unsupported. May be 0 for no multisampling.
+     */
+    public SharedGlRenderThread(final int samples) {
+        this(FailsafeEGLConfigChooserFactory.newFailsafeEGLConfigChooser(samples, null));
+    }
+
+    /**
+     * @param configChooser the chooser of the single {@link EGLConfig} used for all views
+     */
+    public SharedGlRenderThread(@NonNull final EGLConfigChooser configChooser) {
+        this.configChooser = configChooser;
+    }
+
+    /**
+     * @return the cache of programs and textures shared by all renderers of this thread
+     */
+    @NonNull
+    public GlResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    @NonNull
+    MultipleInstanceSafeGLSurfaceView.RenderThread newTarget(
+            @NonNull final WeakReference<MultipleInstanceSafeGLSurfaceView> viewRef) {
+        return new Target(viewRef);
+    }
+
+    private void register(@NonNull final Target target) {
+        synchronized (lock) {
+            targets.add(target);
+            if (thread == null) {
+                thread = new LoopThread();
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void unregister(@NonNull final Target target) {
+        synchronized (lock) {
+            target.shouldExit = true;
+            lock.notifyAll();
+            if (Thread.currentThread() == thread) {
+                // The surface is released on the next loop iteration
+                return;
+            }
+            while (targets.contains(target)) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class LoopThread extends Thread {
+
+        private final List<Target> drawTargets = new ArrayList<>();
+
+        private EGL10 egl;
+        private EGLDisplay display;
+        private EGLConfig config;
+        private EGLContext context;
+        private EGLSurface pbufferSurface;
+        private GL10 gl;
+
+        /**
+         * Incremented with every new EGL context so that renderers get
+         * {@link Renderer#onSurfaceCreated(GL10, EGLConfig)} once per context.
+         */
+        private int contextGeneration;
+
+        LoopThread() {
+            super("SharedGLThread");
+        }
+
+        @Override
+        public void run() {
+            try {
+                guardedRun();
+            } finally {
+                synchronized (lock) {
+                    if (thread == this) {
+                        // Exited abnormally, release all waiting callers
+                        releaseContextLocked();
+                        targets.clear();
+                        thread = null;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        private void guardedRun() {
+            while (true) {
+                Runnable event = null;
+                synchronized (lock) {
+                    while (true) {
+                        updateTargetsLocked();
+                        if (targets.isEmpty()) {
+                            // Targets registered from now on are served by a new thread
+                            releaseContextLocked();
+                            thread = null;
+                            return;
+                        }
+
+                        event = pollEventLocked();
+                        if (event != null) {
+                            ensureContextLocked();
+                            break;
+                        }
+
+                        final long renderDelay = promoteDelayedRendersLocked();
+                        collectDrawTargetsLocked();
+                        if (!drawTargets.isEmpty()) {
+                            break;
+                        }
+
+                        try {
+                            if (renderDelay > 0) {
+                                lock.wait(renderDelay);
+                            } else {
+                                lock.wait();
+                            }
+                        } catch (InterruptedException e) {
+                            // Keep running until all targets are unregistered
+                        }
+                    }
+                }
+
+                if (event != null) {
+                    makeCurrentForEvents();
+                    event.run();
+                    continue;
+                }
+
+                boolean contextLost = false;
+                for (int i = 0; i < drawTargets.size(); i++) {
+                    if (!drawTarget(drawTargets.get(i))) {
+                        contextLost = true;
+                        break;
+                    }
+                }
+                drawTargets.clear();
+
+                if (contextLost) {
+                    synchronized (lock) {
+                        releaseContextLocked();
+                    }
+                }
+            }
+        }
+
+        private void updateTargetsLocked() {
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                final Target target = targets.get(i);
+                if (target.shouldExit && target.events.isEmpty()) {
+                    destroySurfaceLocked(target);
+                    targets.remove(i);
+                    lock.notifyAll();
+                    continue;
+                }
+                if (target.paused != target.requestPaused) {
+                    target.paused = target.requestPaused;
+                    lock.notifyAll();
+                }
+                if (target.paused && target.onPaused != null) {
+                    final Runnable onPaused = target.onPaused;
+                    target.onPaused = null;
+                    onPaused.run();
+                }
+                if (!target.hasSurface && target.eglSurface != null) {
+                    destroySurfaceLocked(target);
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Turns delayed renders that became due into render requests.
+         *
+         * @return the time until the nearest pending delayed render, or 0 if there is none
+         */
+        private long promoteDelayedRendersLocked() {
+            final long now = SystemClock.uptimeMillis();
+            long nearestDelay = 0;
+            for (int i = 0; i < targets.size(); i++) {
+                final Target target = targets.get(i);
+                if (target.renderDeadline != NO_RENDER_DEADLINE) {
+                    final long delay = target.renderDeadline - now;
+                    if (delay <= 0) {
+                        target.renderDeadline = NO_RENDER_DEADLINE;
+                        target.requestRender = true;
+                    } else if (nearestDelay == 0 || delay < nearestDelay) {
+                        nearestDelay = delay;
+                    }
+                }
+            }
+            return nearestDelay;
+        }
+
+        @Nullable
+        private Runnable pollEventLocked() {
+            for (int i = 0; i < targets.size(); i++) {
+                final List<Runnable> events = targets.get(i).events;
+                if (!events.isEmpty()) {
+                    return events.remove(0);
+                }
+            }
+            return null;
+        }
+
+        private void collectDrawTargetsLocked() {
+            for (int i = 0; i < targets.size(); i++) {
+                final Target target = targets.get(i);
+                if (target.readyToDraw()) {
+                    ensureContextLocked();
+                    if (target.eglSurface == null && !createSurfaceLocked(target)) {
+                        continue;
+                    }
+                    target.drawSizeChanged = target.sizeChanged;
+                    target.drawWidth = target.width;
+                    target.drawHeight = target.height;
+                    target.drawFinishRunnable = target.finishDrawingRunnable;
+                    target.sizeChanged = false;
+                    target.requestRender = false;
+                    target.finishDrawingRunnable = null;
+                    drawTargets.add(target);
+                }
+            }
+        }
+
+        /**
+         * @return false if the EGL context was lost
+         */
+        private boolean drawTarget(@NonNull final Target target) {
+            if (!egl.eglMakeCurrent(display, target.eglSurface, target.eglSurface, context)) {
+                Log.w(TAG, "eglMakeCurrent failed: " + egl.eglGetError());
+                synchronized (lock) {
+                    target.surfaceIsBad = true;
+                }
+                return true;
+            }
+
+            final MultipleInstanceSafeGLSurfaceView view = target.viewRef.get();
+            if (view != null) {
+                final Renderer renderer = view.getRenderer();
+                boolean sizeChanged = target.drawSizeChanged;
+                if (target.contextGeneration != contextGeneration) {
+                    target.contextGeneration = contextGeneration;
+                    renderer.onSurfaceCreated(gl, config);
+                    sizeChanged = true;
+                }
+                if (sizeChanged) {
+                    renderer.onSurfaceChanged(gl, target.drawWidth, target.drawHeight);
+                }
+                renderer.onDrawFrame(gl);
+                if (target.drawFinishRunnable != null) {
+                    target.drawFinishRunnable.run();
+                    target.drawFinishRunnable = null;
+                }
+            }
+
+            final boolean swapped = egl.eglSwapBuffers(display, target.eglSurface);
+            final int swapError = swapped ? EGL10.EGL_SUCCESS : egl.eglGetError();
+
+            synchronized (lock) {
+                target.renderComplete = true;
+                if (swapError != EGL10.EGL_SUCCESS && swapError != EGL11.EGL_CONTEXT_LOST) {
+                    Log.w(TAG, "eglSwapBuffers failed: " + swapError);
+                    target.surfaceIsBad = true;
+                }
+                lock.notifyAll();
+            }
+            return swapError != EGL11.EGL_CONTEXT_LOST;
+        }
+
+        private void makeCurrentForEvents() {
+            final EGLSurface surface = pbufferSurface != null
+                    ? pbufferSurface
+                    : EGL10.EGL_NO_SURFACE;
+            if (!egl.eglMakeCurrent(display, surface, surface, context)) {
+                // Events delete and upload GL objects, which would silently do nothing
+                throw new RuntimeException(
+                        "eglMakeCurrent for events failed: " + egl.eglGetError());
+            }
+        }
+
+        private void ensureContextLocked() {
+            if (context != null) {
+                return;
+            }
+            if (egl == null) {
+                egl = (EGL10) EGLContext.getEGL();
+                display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+                if (display == EGL10.EGL_NO_DISPLAY) {
+                    throw new RuntimeException("eglGetDisplay failed");
+                }
+                if (!egl.eglInitialize(display, new int[2])) {
+                    throw new RuntimeException("eglInitialize failed");
+                }
+                config = configChooser.chooseConfig(egl, display);
+            }
+
+            final EGLContext context = egl.eglCreateContext(
+                    display,
+                    config,
+                    EGL10.EGL_NO_CONTEXT,
+                    new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+            if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+                throw new RuntimeException("eglCreateContext failed: " + egl.eglGetError());
+            }
+            this.context = context;
+
+            // Events are run with this surface current while no window surface is drawn to, or
+            // with no surface at all where surfaceless contexts are supported
+            pbufferSurface = egl.eglCreatePbufferSurface(
+                    display,
+                    config,
+                    new int[]{EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE});
+            if (pbufferSurface == EGL10.EGL_NO_SURFACE) {
+                pbufferSurface = null;
+                final int error = egl.eglGetError();
+                if (!isSurfacelessContextSupported()) {
+                    throw new RuntimeException("eglCreatePbufferSurface failed: " + error
+                            + ", and " + EXTENSION_SURFACELESS_CONTEXT + " is not supported");
+                }
+            }
+
+            gl = (GL10) context.getGL();
+            contextGeneration++;
+        }
+
+        private boolean isSurfacelessContextSupported() {
+            final String extensions = egl.eglQueryString(display, EGL10.EGL_EXTENSIONS);
+            return extensions != null && extensions.contains(EXTENSION_SURFACELESS_CONTEXT);
+        }
+
+        private void releaseContextLocked() {
+            if (context == null) {
+                return;
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                final Target target = targets.get(i);
+                destroySurfaceLocked(target);
+                target.requestRender = true;
+            }
+            egl.eglMakeCurrent(
+                    display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (pbufferSurface != null) {
+                egl.eglDestroySurface(display, pbufferSurface);
+                pbufferSurface = null;
+            }
+            egl.eglDestroyContext(display, context);
+            context = null;
+            gl = null;
+            resourceCache.clear();
+        }
+
+        private boolean createSurfaceLocked(@NonNull final Target target) {
+            final MultipleInstanceSafeGLSurfaceView view = target.viewRef.get();
+            if (view == null) {
+                return false;
+            }
+            EGLSurface surface = null;
+            try {
+                surface = egl.eglCreateWindowSurface(display, config, view.getHolder(), null);
+            } catch (IllegalArgumentException e) {
+                // The surface flinger surface is not valid anymore, see
+                // DefaultWindowSurfaceFactory of MultipleInstanceSafeGLSurfaceView
+                Log.e(TAG, "eglCreateWindowSurface", e);
+            }
+            if (surface == null || surface == EGL10.EGL_NO_SURFACE) {
+                target.surfaceIsBad = true;
+                return false;
+            }
+            target.eglSurface = surface;
+            target.sizeChanged = true;
+            return true;
+        }
+
+        private void destroySurfaceLocked(@NonNull final Target target) {
+            if (target.eglSurface != null) {
+                egl.eglMakeCurrent(
+                        display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+                egl.eglDestroySurface(display, target.eglSurface);
+                target.eglSurface = null;
+            }
+        }
+    }
+
+    /**
+     * The state of a single view rendered on this thread. All fields except the ones prefixed
+     * with "draw" are guarded by the lock of the {@link SharedGlRenderThread}.
+     */
+    private final class Target implements MultipleInstanceSafeGLSurfaceView.RenderThread {
+
+        final WeakReference<MultipleInstanceSafeGLSurfaceView> viewRef;
+
+        final List<Runnable> events = new ArrayList<>();
+
+        boolean shouldExit;
+        boolean requestPaused;
+        boolean paused;
+        Runnable onPaused;
+        boolean hasSurface;
+        boolean surfaceIsBad;
+        boolean requestRender = true;
+        long renderDeadline = NO_RENDER_DEADLINE;
+        boolean renderComplete;
+        boolean sizeChanged;
+        int renderMode = MultipleInstanceSafeGLSurfaceView.RENDERMODE_CONTINUOUSLY;
+        int width;
+        int height;
+        Runnable finishDrawingRunnable;
+        EGLSurface eglSurface;
+
+        // Owned by the loop thread
+        int contextGeneration;
+        boolean drawSizeChanged;
+        int drawWidth;
+        int drawHeight;
+        Runnable drawFinishRunnable;
+
+        Target(@NonNull final WeakReference<MultipleInstanceSafeGLSurfaceView> viewRef) {
+            this.viewRef = viewRef;
+        }
+
+        boolean readyToDraw() {
+            return !paused && hasSurface && !surfaceIsBad
+                    && width > 0 && height > 0
+                    && (requestRender
+                    || renderMode == MultipleInstanceSafeGLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        }
+
+        private boolean isRegisteredLocked() {
+            return targets.contains(this);
+        }
+
+        private void awaitLocked() {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void start() {
+            register(this);
+        }
+
+        @Override
+        public void setRenderMode(final int renderMode) {
+            if (!((MultipleInstanceSafeGLSurfaceView.RENDERMODE_WHEN_DIRTY <= renderMode)
+                    && (renderMode <= MultipleInstanceSafeGLSurfaceView.RENDERMODE_CONTINUOUSLY))) {
+                throw new IllegalArgumentException("renderMode");
+            }
+            synchronized (lock) {
+                this.renderMode = renderMode;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public int getRenderMode() {
+            synchronized (lock) {
+                return renderMode;
+            }
+        }
+
+        @Override
+        public void requestRender() {
+            synchronized (lock) {
+                requestRender = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void requestRenderDelayed(final long delayMillis) {
+            if (delayMillis <= 0) {
+                requestRender();
+                return;
+            }
+            synchronized (lock) {
+                renderDeadline = SystemClock.uptimeMillis() + delayMillis;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void cancelDelayedRender() {
+            synchronized (lock) {
+                renderDeadline = NO_RENDER_DEADLINE;
+            }
+        }
+
+        @Override
+        public void requestRenderAndNotify(final Runnable finishDrawing) {
+            synchronized (lock) {
+                if (Thread.currentThread() == thread) {
+                    return;
+                }
+                requestRender = true;
+                renderComplete = false;
+                finishDrawingRunnable = finishDrawing;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void surfaceCreated() {
+            synchronized (lock) {
+                hasSurface = true;
+                surfaceIsBad = false;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void surfaceDestroyed() {
+            synchronized (lock) {
+                hasSurface = false;
+                lock.notifyAll();
+                while (eglSurface != null && isRegisteredLocked()) {
+                    awaitLocked();
+                }
+            }
+        }
+
+        @Override
+        public void onPause() {
+            synchronized (lock) {
+                requestPaused = true;
+                lock.notifyAll();
+                while (!paused && isRegisteredLocked()) {
+                    awaitLocked();
+                }
+            }
+        }
+
+        @Override
+        public void requestPause(@Nullable final Runnable onPaused) {
+            synchronized (lock) {
+                if (!isRegisteredLocked()) {
+                    if (onPaused != null) {
+                        onPaused.run();
+                    }
+                    return;
+                }
+                requestPaused = true;
+                this.onPaused = onPaused;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void onResume() {
+            synchronized (lock) {
+                requestPaused = false;
+                onPaused = null;
+                requestRender = true;
+                renderComplete = false;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void onWindowResize(final int w, final int h) {
+            synchronized (lock) {
+                width = w;
+                height = h;
+                sizeChanged = true;
+                requestRender = true;
+                renderComplete = false;
+                if (Thread.currentThread() == thread) {
+                    return;
+                }
+                lock.notifyAll();
+
+                // Wait for the thread to render a frame of the new size
+                while (!renderComplete && readyToDraw() && isRegisteredLocked()) {
+                    awaitLocked();
+                }
+            }
+        }
+
+        @Override
+        public void queueEvent(final Runnable r) {
+            if (r == null) {
+                throw new IllegalArgumentException("r must not be null");
+            }
+            synchronized (lock) {
+                events.add(r);
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void requestExitAndWait() {
+            unregister(this);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+import com.doctoror.particlesdrawable.model.Scene;
+
+/**
+ * CPU side data of a single frame: a snapshot of the scene and the resolved line vertices.
+ * Prepared with {@link GlSceneRenderer#prepareFrame(Scene, GlFrame)} on any thread and drawn with
+ * {@link GlSceneRenderer#drawFrame(GlFrame)} on the GL thread, so that the next frame can be
+ * prepared while the current one is drawn.
+ */
+@KeepAsApi
+public final class GlFrame {
+
+    final Scene scene = new Scene();
+    final GlLineFrame lines = new GlLineFrame();
+}
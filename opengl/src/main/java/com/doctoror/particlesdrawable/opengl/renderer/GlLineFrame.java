@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Line vertices of a single frame together with the mode they were resolved for. Resolved by
+ * {@link GlSceneRendererLines#prepare(com.doctoror.particlesdrawable.model.Scene, GlLineFrame)}
+ * on any thread and drawn on the GL thread.
+ */
+final class GlLineFrame {
+
+    ByteBuffer vertexBuffer;
+    IntBuffer vertexWords;
+
+    int verticesCount;
+
+    boolean asTriangles;
+    boolean asIndexedQuads;
+    boolean asExpandedQuads;
+    boolean asAntialiasedQuads;
+
+    float lineThickness;
+    float positionScale = 1f;
+
+    void ensureCapacity(final int bytes) {
+        if (vertexBuffer == null || vertexBuffer.capacity() != bytes) {
+            vertexBuffer = ByteBuffer.allocateDirect(bytes);
+            vertexBuffer.order(ByteOrder.nativeOrder());
+            vertexWords = vertexBuffer.asIntBuffer();
+        }
+    }
+}
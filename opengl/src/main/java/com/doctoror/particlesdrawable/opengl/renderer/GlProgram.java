@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import com.doctoror.particlesdrawable.opengl.util.GLErrorChecker;
+import com.doctoror.particlesdrawable.opengl.util.ShaderLoader;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Linked shader program with attribute and uniform locations resolved once after link.
+ * Locations are accessed by the index of the name in the arrays passed on creation, and are -1
+ * for names that are not active in this program.
+ */
+final class GlProgram {
+
+    private final int handle;
+    private final int attributeMask;
+    private final int[] attributeLocations;
+    private final int[] uniformLocations;
+
+    private GlProgram(
+            final int handle,
+            @NonNull final int[] attributeLocations,
+            @NonNull final int[] uniformLocations) {
+        this.handle = handle;
+        this.attributeLocations = attributeLocations;
+        this.uniformLocations = uniformLocations;
+
+        int attributeMask = 0;
+        for (final int location : attributeLocations) {
+            if (location >= 0) {
+                attributeMask |= 1 << location;
+            }
+        }
+        this.attributeMask = attributeMask;
+    }
+
+    @NonNull
+    static GlProgram create(
+            @NonNull final String tag,
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode,
+            @NonNull final String[] attributes,
+            @NonNull final String[] uniforms) {
+        return compile(tag, vertexShaderCode, fragmentShaderCode, attributes, uniforms, false);
+    }
+
+    /**
+     * Loads the program from the binary cache, or compiles it and stores the binary to the cache
+     * if the cache is not null and program binaries are supported by the current context.
+     */
+    @NonNull
+    static GlProgram create(
+            @NonNull final String tag,
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode,
+            @NonNull final String[] attributes,
+            @NonNull final String[] uniforms,
+            @Nullable final GlProgramBinaryCache binaryCache) {
+        if (binaryCache == null || !GlProgramBinaryCache.isSupported()) {
+            return create(tag, vertexShaderCode, fragmentShaderCode, attributes, uniforms);
+        }
+
+        final String key = binaryCache.resolveKey(vertexShaderCode, fragmentShaderCode);
+        final int program = GLES20.glCreateProgram();
+        if (binaryCache.load(program, key)) {
+            return fromLinkedProgram(program, attributes, uniforms);
+        }
+        GLES20.glDeleteProgram(program);
+
+        final GlProgram compiled = compile(
+                tag, vertexShaderCode, fragmentShaderCode, attributes, uniforms, true);
+        binaryCache.save(compiled.handle, key);
+        return compiled;
+    }
+
+    @NonNull
+    private static GlProgram compile(
+            @NonNull final String tag,
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode,
+            @NonNull final String[] attributes,
+            @NonNull final String[] uniforms,
+            final boolean binaryRetrievable) {
+        final int vertexShader = ShaderLoader.loadShader(
+                GLES20.GL_VERTEX_SHADER,
+                vertexShaderCode);
+        GLErrorChecker.checkGlError(tag + " glCompileShader vertex");
+
+        final int fragmentShader = ShaderLoader.loadShader(
+                GLES20.GL_FRAGMENT_SHADER,
+                fragmentShaderCode);
+        GLErrorChecker.checkGlError(tag + " glCompileShader fragment");
+
+        final int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLErrorChecker.checkGlError(tag + " glAttachShader vertex");
+
+        GLES20.glAttachShader(program, fragmentShader);
+        GLErrorChecker.checkGlError(tag + " glAttachShader fragment");
+
+        if (binaryRetrievable) {
+            // Some drivers only return a binary when asked for before linking
+            GLES30.glProgramParameteri(
+                    program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+            GLErrorChecker.checkGlError(tag + " glProgramParameteri");
+        }
+
+        GLES20.glLinkProgram(program);
+        GLErrorChecker.checkGlError(tag + " glLinkProgram");
+
+        // Shaders are flagged for deletion and released together with the program
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        return fromLinkedProgram(program, attributes, uniforms);
+    }
+
+    @NonNull
+    private static GlProgram fromLinkedProgram(
+            final int program,
+            @NonNull final String[] attributes,
+            @NonNull final String[] uniforms) {
+        final int[] attributeLocations = new int[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            attributeLocations[i] = GLES20.glGetAttribLocation(program, attributes[i]);
+        }
+
+        final int[] uniformLocations = new int[uniforms.length];
+        for (int i = 0; i < uniforms.length; i++) {
+            uniformLocations[i] = GLES20.glGetUniformLocation(program, uniforms[i]);
+        }
+
+        return new GlProgram(program, attributeLocations, uniformLocations);
+    }
+
+    int getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return the bit mask of all active attribute locations
+     */
+    int getAttributeMask() {
+        return attributeMask;
+    }
+
+    int getAttributeLocation(final int index) {
+        return attributeLocations[index];
+    }
+
+    int getUniformLocation(final int index) {
+        return uniformLocations[index];
+    }
+
+    void delete() {
+        GLES20.glDeleteProgram(handle);
+    }
+}
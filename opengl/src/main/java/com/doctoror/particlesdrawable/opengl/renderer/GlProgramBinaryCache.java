@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent cache of linked program binaries, so that shaders are compiled only once per driver
+ * version rather than every time a context is created. Binaries are keyed by the GL renderer and
+ * version strings and the shader sources. A binary that the driver rejects, for example after a
+ * driver update that kept the version string, is deleted and the program is compiled from
+ * source.
+ * <p>
+ * Requires an OpenGL ES 3.0 capable context. On older contexts programs are always compiled.
+ */
+@KeepAsApi
+public final class GlProgramBinaryCache {
+
+    private static final String TAG = "GlProgramBinaryCache";
+
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final String VERSION_PREFIX = "OpenGL ES ";
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    @NonNull
+    private final File directory;
+
+    /**
+     * @param directory the directory to store binaries in, usually a subdirectory of
+     *                  {@link android.content.Context#getCacheDir()}
+     */
+    public GlProgramBinaryCache(@NonNull final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if the current context can load and retrieve program binaries
+     */
+    static boolean isSupported() {
+        return parseMajorVersion(GLES20.glGetString(GLES20.GL_VERSION)) >= 3;
+    }
+
+    /**
+     * @param version the GL_VERSION string, like "OpenGL ES 3.2 V@415.0"
+     * @return the major version, or 0 if the string is not recognized
+     */
+    @VisibleForTesting
+    static int parseMajorVersion(@Nullable final String version) {
+        if (version == null || !version.startsWith(VERSION_PREFIX)) {
+            return 0;
+        }
+        int major = 0;
+        for (int i = VERSION_PREFIX.length(); i < version.length(); i++) {
+            final char c = version.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            major = major * 10 + (c - '0');
+        }
+        return major;
+    }
+
+    /**
+     * Must be called with the context current.
+     *
+     * @return the key of the program built from the sources by the current driver
+     */
+    @NonNull
+    String resolveKey(
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode) {
+        return hash(
+                GLES20.glGetString(GLES20.GL_RENDERER),
+                GLES20.glGetString(GLES20.GL_VERSION),
+                vertexShaderCode,
+                fragmentShaderCode);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static String hash(@NonNull final String... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (final String part : parts) {
+            if (part != null) {
+                digest.update(part.getBytes(CHARSET));
+            }
+            // Separator so that moving characters between parts changes the hash
+            digest.update((byte) 0);
+        }
+
+        final byte[] bytes = digest.digest();
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Loads the cached binary into the program.
+     *
+     * @param program the newly created program to load the binary into
+     * @param key     the key from {@link #resolveKey(String, String)}
+     * @return true if the program was loaded and is linked
+     */
+    boolean load(final int program, @NonNull final String key) {
+        final File file = new File(directory, key + FILE_SUFFIX);
+        if (!file.isFile()) {
+            return false;
+        }
+
+        final ByteBuffer binary;
+        final int format;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            format = in.readInt();
+            final int length = in.readInt();
+            if (length <= 0 || length > file.length()) {
+                throw new IOException("Invalid binary length " + length);
+            }
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            binary = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+            binary.put(bytes);
+            binary.position(0);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read program binary", e);
+            deleteQuietly(file);
+            return false;
+        }
+
+        GLES30.glProgramBinary(program, format, binary, binary.capacity());
+
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+
+        // Clear the error of a rejected binary so that it is not attributed to the next call
+        final int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR || linkStatus[0] != GLES20.GL_TRUE) {
+            deleteQuietly(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the binary of the linked program and stores it. Failures are logged and ignored,
+     * the program is compiled from source next time.
+     *
+     * @param program the linked program
+     * @param key     the key from {@link #resolveKey(String, String)}
+     */
+    void save(final int program, @NonNull final String key) {
+        final int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            GLES20.glGetError();
+            return;
+        }
+
+        final ByteBuffer binary = ByteBuffer
+                .allocateDirect(length[0])
+                .order(ByteOrder.nativeOrder());
+        final int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+            return;
+        }
+
+        final byte[] bytes = new byte[length[0]];
+        binary.position(0);
+        binary.get(bytes);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+
+        // Written to a temporary file first so that a partially written binary is never loaded
+        final File temp = new File(directory, key + TEMP_FILE_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(format[0]);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write program binary", e);
+            deleteQuietly(temp);
+            return;
+        }
+
+        if (!temp.renameTo(new File(directory, key + FILE_SUFFIX))) {
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(@NonNull final File file) {
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doctoror.particlesdrawable.KeepAsApi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference counted cache of linked programs and textures. A {@link GlSceneRenderer} uses an own
+ * cache by default. Renderers whose contexts share GL objects, either by being the same context
+ * or by being in the same share group, may use a single cache so that programs are compiled and
+ * textures are uploaded once for all of them.
+ * <p>
+ * Objects are deleted when the last reference is released. When the context, or all contexts of
+ * the share group, are destroyed, {@link #clear()} must be called, after which references to
+ * objects of the destroyed contexts are ignored on release.
+ */
+@KeepAsApi
+public final class GlResourceCache {
+
+    private final Map<String, ProgramEntry> programs = new HashMap<>();
+    private final Map<String, TextureEntry> textures = new HashMap<>();
+
+    @Nullable
+    private GlProgramBinaryCache programBinaryCache;
+
+    /**
+     * Sets the persistent cache to load programs from, instead of compiling them, when
+     * supported.
+     *
+     * @param programBinaryCache the cache to use, or null to always compile programs
+     */
+    public synchronized void setProgramBinaryCache(
+            @Nullable final GlProgramBinaryCache programBinaryCache) {
+        this.programBinaryCache = programBinaryCache;
+    }
+
+    /**
+     * Returns the cached program compiled from the same sources or compiles a new one. Every call
+     * must be paired with {@link #releaseProgram(GlProgram)}.
+     */
+    @NonNull
+    synchronized GlProgram acquireProgram(
+            @NonNull final String tag,
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode,
+            @NonNull final String[] attributes,
+            @NonNull final String[] uniforms) {
+        final String key = vertexShaderCode + '\n' + fragmentShaderCode;
+        ProgramEntry entry = programs.get(key);
+        if (entry == null) {
+            entry = new ProgramEntry(GlProgram.create(
+                    tag,
+                    vertexShaderCode,
+                    fragmentShaderCode,
+                    attributes,
+                    uniforms,
+                    programBinaryCache));
+            // Other contexts of the share group see the program only after it is complete
+            GLES20.glFinish();
+            programs.put(key, entry);
+        }
+        entry.references++;
+        return entry.program;
+    }
+
+    synchronized void releaseProgram(@Nullable final GlProgram program) {
+        if (program == null) {
+            return;
+        }
+        for (final Map.Entry<String, ProgramEntry> e : programs.entrySet()) {
+            final ProgramEntry entry = e.getValue();
+            if (entry.program == program) {
+                entry.references--;
+                if (entry.references == 0) {
+                    program.delete();
+                    programs.remove(e.getKey());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the cached texture for the key and adds a reference to it, or returns 0 if there
+     * is none, in which case the caller may create it and add it with
+     * {@link #putTexture(String, int)}.
+     */
+    synchronized int acquireTexture(@NonNull final String key) {
+        final TextureEntry entry = textures.get(key);
+        if (entry == null) {
+            return 0;
+        }
+        entry.references++;
+        return entry.texture;
+    }
+
+    /**
+     * Adds a created texture with a single reference. If a texture was added for this key
+     * concurrently, the passed texture is deleted and the cached one is returned instead.
+     */
+    synchronized int putTexture(@NonNull final String key, final int texture) {
+        final TextureEntry existing = textures.get(key);
+        if (existing != null) {
+            deleteTexture(texture);
+            existing.references++;
+            return existing.texture;
+        }
+        // Other contexts of the share group see the texture only after the upload is complete
+        GLES20.glFinish();
+        textures.put(key, new TextureEntry(texture));
+        return texture;
+    }
+
+    synchronized void releaseTexture(@NonNull final String key, final int texture) {
+        final TextureEntry entry = textures.get(key);
+        if (entry != null && entry.texture == texture) {
+            entry.references--;
+            if (entry.references == 0) {
+                deleteTexture(texture);
+                textures.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forgets all objects without deleting them. Must be called when the objects were destroyed
+     * together with their contexts.
+     */
+    public synchronized void clear() {
+        programs.clear();
+        textures.clear();
+    }
+
+    private static void deleteTexture(final int texture) {
+        GLES20.glDeleteTextures(1, new int[]{texture}, 0);
+    }
+
+    private static final class ProgramEntry {
+
+        final GlProgram program;
+        int references;
+
+        ProgramEntry(@NonNull final GlProgram program) {
+            this.program = program;
+        }
+    }
+
+    private static final class TextureEntry {
+
+        final int texture;
+        int references = 1;
+
+        TextureEntry(final int texture) {
+            this.texture = texture;
+        }
+    }
+}
@@ -17,6 +17,8 @@ package com.doctoror.particlesdrawable.opengl.renderer;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
@@ -27,28 +29,31 @@ import androidx.annotation.Nullable;
 import com.doctoror.particlesdrawable.KeepAsApi;
 import com.doctoror.particlesdrawable.contract.SceneRenderer;
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.util.LineSelector;
 
 import java.util.Arrays;
 
 @KeepAsApi
 public class GlSceneRenderer implements SceneRenderer {
 
+    private final GlStateTracker stateTracker = new GlStateTracker();
+
     // Fields below cannot be final because it would not allow replacing them with mocks for testing
 
     /**
      * @noinspection FieldMayBeFinal
      */
-    private GlSceneRendererBackground background = new GlSceneRendererBackground();
+    private GlSceneRendererBackground background = new GlSceneRendererBackground(stateTracker);
 
     /**
      * @noinspection FieldMayBeFinal
      */
-    private GlSceneRendererParticles particles = new GlSceneRendererParticles();
+    private GlSceneRendererParticles particles = new GlSceneRendererParticles(stateTracker);
 
     /**
      * @noinspection FieldMayBeFinal
      */
-    private GlSceneRendererLines lines = new GlSceneRendererLines();
+    private GlSceneRendererLines lines = new GlSceneRendererLines(stateTracker);
 
     private final float[] mvpSourceMatrix = new float[16];
     private final float[] mvpTranslatedBackgroundMatrix = new float[16];
@@ -56,11 +61,32 @@ public class GlSceneRenderer implements SceneRenderer {
     private final float[] projectionMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
 
-    private final int[] textureHandle = new int[2];
+    private final int[] backgroundTextureHandle = new int[1];
+
+    @NonNull
+    private GlResourceCache resourceCache = new GlResourceCache();
+    private boolean ownResourceCache = true;
+
+    @Nullable
+    private GlProgramBinaryCache programBinaryCache;
+
+    /**
+     * The context the GL resources were created in.
+     */
+    @Nullable
+    private EGLContext setupContext;
 
     private float backgroundTranslationX;
     private float foregroundTranslationX;
 
+    private boolean sharedContext;
+
+    private int width;
+    private int height;
+
+    @ColorInt
+    private int clearColor;
+
     public void setBackgroundTranslationX(final float backgroundTranslationX) {
         this.backgroundTranslationX = backgroundTranslationX;
         Matrix.translateM(mvpTranslatedBackgroundMatrix, 0, mvpSourceMatrix, 0, backgroundTranslationX, 0, 0);
@@ -68,6 +94,8 @@ public class GlSceneRenderer implements SceneRenderer {
 
     public void setForegroundTranslationX(final float foregroundTranslationX) {
         this.foregroundTranslationX = foregroundTranslationX;
+        lines.setForegroundTranslationX(foregroundTranslationX);
+        particles.setForegroundTranslationX(foregroundTranslationX);
         Matrix.translateM(mvpTranslatedForegroundMatrix, 0, mvpSourceMatrix, 0, foregroundTranslationX, 0, 0);
     }
 
@@ -75,7 +103,130 @@ public class GlSceneRenderer implements SceneRenderer {
         particles.markTextureDirty();
     }
 
+    /**
+     * Enables or disables drawing particles with analytic motion in the vertex shader. The
+     * {@link com.doctoror.particlesdrawable.engine.Engine} must be set to analytic motion as well.
+     *
+     * @param analyticMotion true to resolve particle positions in the vertex shader
+     * @see com.doctoror.particlesdrawable.engine.Engine#setAnalyticMotion(boolean)
+     */
+    public void setAnalyticParticleMotion(final boolean analyticMotion) {
+        particles.setAnalyticMotion(analyticMotion);
+    }
+
+    /**
+     * Enables or disables drawing particles as antialiased circles computed in the fragment shader
+     * instead of sampling a generated circle texture. Textureless particles have crisp edges at
+     * any radius and do not allocate a particle bitmap.
+     *
+     * @param textureless true to draw particles without a texture
+     */
+    public void setTexturelessParticles(final boolean textureless) {
+        particles.setTextureless(textureless);
+    }
+
+    /**
+     * Enables or disables drawing thick lines as indexed quads with 4 vertices per line and a
+     * static index buffer, instead of two triangles with 6 vertices per line.
+     *
+     * @param indexed true to draw thick lines as indexed quads
+     */
+    public void setIndexedThickLines(final boolean indexed) {
+        lines.setIndexedThickLines(indexed);
+    }
+
+    /**
+     * Enables or disables drawing thick lines as quads extruded in the vertex shader from the two
+     * line endpoints, so that no line geometry is computed on the CPU. Thick lines are drawn as
+     * indexed quads in this mode regardless of {@link #setIndexedThickLines(boolean)}.
+     *
+     * @param shaderExpanded true to extrude thick lines in the vertex shader
+     */
+    public void setShaderExpandedThickLines(final boolean shaderExpanded) {
+        lines.setShaderExpandedThickLines(shaderExpanded);
+    }
+
+    /**
+     * Enables or disables drawing lines of any thickness as shader-expanded quads with alpha
+     * falloff over the edge pixel. Gives smooth lines without multisampling.
+     *
+     * @param antialiased true to antialias lines in the fragment shader
+     */
+    public void setAntialiasedLines(final boolean antialiased) {
+        lines.setAntialiased(antialiased);
+    }
+
+    /**
+     * Enables or disables resolving line vertices on worker threads, so that the GL thread does
+     * not run the particle pair loop alone. Has no effect on single core devices.
+     *
+     * @param parallel true to resolve line vertices on worker threads
+     */
+    public void setParallelLineGeneration(final boolean parallel) {
+        lines.setParallelLineGeneration(parallel);
+    }
+
+    /**
+     * Limits the number of connection lines drawn per frame. When over budget, the shortest
+     * lines are kept, so that the worst case frame time is bounded regardless of how particles
+     * cluster.
+     *
+     * @param maxLines            the max number of lines per frame, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @param maxLinesPerParticle the max number of lines from and to a single particle, or
+     *                            {@link LineSelector#UNLIMITED}
+     * @throws IllegalArgumentException if any of the values is negative
+     */
+    public void setLineBudget(final int maxLines, final int maxLinesPerParticle) {
+        lines.setLineBudget(maxLines, maxLinesPerParticle);
+    }
+
+    /**
+     * Marks the GL context as shared with other renderers, for example when rendering on a
+     * {@link com.doctoror.particlesdrawable.opengl.SharedGlRenderThread}. In this mode all state
+     * this renderer depends on is set again at the start of every frame, and vertex attribute
+     * arrays are disabled at the end of it.
+     *
+     * @param sharedContext true if the context is shared with other renderers
+     */
+    public void setSharedContext(final boolean sharedContext) {
+        this.sharedContext = sharedContext;
+    }
+
+    /**
+     * Sets the cache to take programs and textures from, shared with other renderers whose
+     * contexts share GL objects with the context of this renderer. Must be called before
+     * {@link #setupGl()}.
+     *
+     * @param resourceCache the shared cache, or null to use an own cache
+     */
+    public void setResourceCache(@Nullable final GlResourceCache resourceCache) {
+        ownResourceCache = resourceCache == null;
+        this.resourceCache = resourceCache != null ? resourceCache : new GlResourceCache();
+        if (programBinaryCache != null) {
+            this.resourceCache.setProgramBinaryCache(programBinaryCache);
+        }
+    }
+
+    /**
+     * Sets the persistent cache to load linked programs from, so that shaders are compiled only
+     * on the first start with the current driver. Applies to programs created after this call,
+     * including programs of renderers sharing the resource cache.
+     *
+     * @param programBinaryCache the cache to use, or null to always compile programs
+     * @see #setResourceCache(GlResourceCache)
+     */
+    public void setProgramBinaryCache(@Nullable final GlProgramBinaryCache programBinaryCache) {
+        this.programBinaryCache = programBinaryCache;
+        resourceCache.setProgramBinaryCache(programBinaryCache);
+    }
+
     public void setClearColor(@ColorInt final int color) {
+        clearColor = color;
+        applyClearColor(color);
+    }
+
+    private static void applyClearColor(@ColorInt final int color) {
         GLES20.glClearColor(
                 Color.red(color) / 255f,
                 Color.green(color) / 255f,
@@ -95,17 +246,25 @@ public class GlSceneRenderer implements SceneRenderer {
     }
 
     public void setupGl() {
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-        GLES20.glGenTextures(2, textureHandle, 0);
+        setupContext = EGL14.eglGetCurrentContext();
+        stateTracker.reset();
+        applyBlendState();
+        GLES20.glGenTextures(1, backgroundTextureHandle, 0);
 
         markParticleTextureDirty();
-        background.init(textureHandle[0]);
-        lines.init();
-        particles.init(textureHandle[1]);
+        background.init(backgroundTextureHandle[0], resourceCache);
+        lines.init(resourceCache);
+        particles.init(resourceCache);
+    }
+
+    private void applyBlendState() {
+        stateTracker.setBlendEnabled(true);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
     }
 
     public void setDimensions(final int width, final int height) {
+        this.width = width;
+        this.height = height;
         GLES20.glViewport(0, 0, width, height);
 
         Arrays.fill(projectionMatrix, 0);
@@ -126,15 +285,75 @@ public class GlSceneRenderer implements SceneRenderer {
     }
 
     public void recycle() {
-        GLES20.glDeleteTextures(2, textureHandle, 0);
+        lines.releaseWorkers();
+        if (setupContext != null && !setupContext.equals(EGL14.eglGetCurrentContext())) {
+            // The resources were destroyed together with their context, and their handles may
+            // already belong to other renderers of a shared context
+            if (ownResourceCache) {
+                resourceCache.clear();
+            }
+            setupContext = null;
+            return;
+        }
+        GLES20.glDeleteTextures(1, backgroundTextureHandle, 0);
+        stateTracker.onTextureDeleted(backgroundTextureHandle[0]);
+        backgroundTextureHandle[0] = 0;
+        background.recycle();
+        particles.recycle();
+        lines.recycle();
+    }
+
+    private void beginFrame() {
+        if (sharedContext) {
+            // Other renderers may have changed the state of the context since the last frame
+            stateTracker.invalidate();
+            applyBlendState();
+            applyClearColor(clearColor);
+            GLES20.glViewport(0, 0, width, height);
+        }
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    }
+
+    private void endFrame() {
+        if (sharedContext) {
+            stateTracker.disableVertexAttribArrays();
+        }
     }
 
     @Override
     public void drawScene(
             @NonNull final Scene scene) {
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        beginFrame();
         background.drawScene(mvpTranslatedBackgroundMatrix);
         lines.drawScene(scene, mvpTranslatedForegroundMatrix);
         particles.drawScene(scene, mvpTranslatedForegroundMatrix);
+        endFrame();
+    }
+
+    /**
+     * Takes a snapshot of the scene and resolves its line vertices into the frame. Makes no GL
+     * calls, so it may be called on a worker thread, but the scene must not be modified
+     * concurrently, and calls must not overlap with each other.
+     *
+     * @param scene the scene to snapshot
+     * @param frame the frame to prepare, must not be drawn concurrently
+     */
+    public void prepareFrame(@NonNull final Scene scene, @NonNull final GlFrame frame) {
+        frame.scene.copyStateFrom(scene);
+        lines.prepare(frame.scene, frame.lines);
+    }
+
+    /**
+     * Draws a frame prepared with {@link #prepareFrame(Scene, GlFrame)}. Must be called on the GL
+     * thread.
+     *
+     * @param frame the frame to draw
+     */
+    public void drawFrame(@NonNull final GlFrame frame) {
+        beginFrame();
+        background.drawScene(mvpTranslatedBackgroundMatrix);
+        lines.draw(frame.lines, mvpTranslatedForegroundMatrix);
+        particles.drawScene(frame.scene, mvpTranslatedForegroundMatrix);
+        endFrame();
     }
 }
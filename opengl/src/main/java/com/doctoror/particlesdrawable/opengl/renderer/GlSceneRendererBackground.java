@@ -20,7 +20,6 @@ import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
 import com.doctoror.particlesdrawable.opengl.util.GLErrorChecker;
-import com.doctoror.particlesdrawable.opengl.util.ShaderLoader;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -49,6 +48,13 @@ final class GlSceneRendererBackground {
                     "  gl_FragColor = texture2D(sTexture, vTexCoord);" +
                     "}";
 
+    private static final String[] ATTRIBUTES = {"vPosition", "aTexCoord"};
+    private static final int ATTRIBUTE_POSITION = 0;
+    private static final int ATTRIBUTE_TEX_COORD = 1;
+
+    private static final String[] UNIFORMS = {"uMVPMatrix"};
+    private static final int UNIFORM_MVP_MATRIX = 0;
+
     private static final int BYTES_PER_SHORT = 2;
     private static final int COORDINATES_PER_VERTEX = 2;
 
@@ -60,33 +66,36 @@ final class GlSceneRendererBackground {
     private short width;
     private short height;
 
-    private int program;
+    @NonNull
+    private final GlStateTracker stateTracker;
+
+    private GlResourceCache resourceCache;
+    private GlProgram program;
 
     private int textureId;
     private boolean hasTexture;
 
-    void init(final int textureId) {
-        this.textureId = textureId;
-
-        final int vertexShader = ShaderLoader.loadShader(
-                GLES20.GL_VERTEX_SHADER,
-                VERTEX_SHADER_CODE);
-        GLErrorChecker.checkGlError("background glCompileShader vertex");
-
-        final int fragmentShader = ShaderLoader.loadShader(
-                GLES20.GL_FRAGMENT_SHADER,
-                FRAGMENT_SHADER_CODE);
-        GLErrorChecker.checkGlError("background glCompileShader fragment");
-
-        program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLErrorChecker.checkGlError("background glAttachShader vertex");
+    GlSceneRendererBackground(@NonNull final GlStateTracker stateTracker) {
+        this.stateTracker = stateTracker;
+    }
 
-        GLES20.glAttachShader(program, fragmentShader);
-        GLErrorChecker.checkGlError("background glAttachShader fragment");
+    void init(final int textureId, @NonNull final GlResourceCache resourceCache) {
+        this.textureId = textureId;
+        this.resourceCache = resourceCache;
+        program = resourceCache.acquireProgram(
+                "background",
+                VERTEX_SHADER_CODE,
+                FRAGMENT_SHADER_CODE,
+                ATTRIBUTES,
+                UNIFORMS);
+    }
 
-        GLES20.glLinkProgram(program);
-        GLErrorChecker.checkGlError("background glLinkProgram");
+    void recycle() {
+        if (program != null) {
+            resourceCache.releaseProgram(program);
+            stateTracker.onProgramDeleted(program.getHandle());
+            program = null;
+        }
     }
 
     void setDimensions(final int width, final int height) {
@@ -98,7 +107,7 @@ final class GlSceneRendererBackground {
 
     void setTexture(@Nullable final Bitmap texture) {
         if (texture != null) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            stateTracker.bindTexture(textureId);
             GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, texture, 0);
             GLErrorChecker.checkGlError("background texImage2D");
 
@@ -177,35 +186,30 @@ final class GlSceneRendererBackground {
             backgroundTextureCoordinates.position(0);
             backgroundCoordinates.position(0);
 
-            GLES20.glUseProgram(program);
+            stateTracker.useProgram(program);
+            stateTracker.bindArrayBuffer(0);
             GLErrorChecker.checkGlError("background glUseProgram");
 
-            final int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
-            GLES20.glEnableVertexAttribArray(positionHandle);
-
             GLES20.glVertexAttribPointer(
-                    positionHandle,
+                    program.getAttributeLocation(ATTRIBUTE_POSITION),
                     COORDINATES_PER_VERTEX,
                     GLES20.GL_SHORT,
                     false,
                     0,
                     backgroundCoordinates);
 
-            final int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
-            GLES20.glEnableVertexAttribArray(texCoordHandle);
-
             GLES20.glVertexAttribPointer(
-                    texCoordHandle,
+                    program.getAttributeLocation(ATTRIBUTE_TEX_COORD),
                     COORDINATES_PER_VERTEX,
                     GLES20.GL_BYTE,
                     false,
                     0,
                     backgroundTextureCoordinates);
 
-            final int mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-            GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, matrix, 0);
+            GLES20.glUniformMatrix4fv(
+                    program.getUniformLocation(UNIFORM_MVP_MATRIX), 1, false, matrix, 0);
 
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            stateTracker.bindTexture(textureId);
             GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
             GLErrorChecker.checkGlError("background glDrawArrays");
         }
@@ -15,27 +15,31 @@
  */
 package com.doctoror.particlesdrawable.opengl.renderer;
 
-import android.graphics.Color;
 import android.opengl.GLES20;
 
 import com.doctoror.particlesdrawable.model.Scene;
 import com.doctoror.particlesdrawable.opengl.util.GLErrorChecker;
-import com.doctoror.particlesdrawable.opengl.util.ShaderLoader;
-import com.doctoror.particlesdrawable.util.DistanceResolver;
-import com.doctoror.particlesdrawable.util.LineColorResolver;
+import com.doctoror.particlesdrawable.util.LineColorTable;
+import com.doctoror.particlesdrawable.util.LineSelector;
+import com.doctoror.particlesdrawable.util.ViewportCuller;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 
-import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 final class GlSceneRendererLines {
 
+    /**
+     * Positions are stored as shorts multiplied by a power of two to keep subpixel precision.
+     * uPositionScale is the inverse of that multiplier.
+     */
     private static final String VERTEX_SHADER_CODE =
             "uniform mat4 uMVPMatrix;" +
-                    "attribute vec4 vPosition;" +
+                    "uniform float uPositionScale;" +
+                    "attribute vec2 vPosition;" +
                     "attribute vec4 aColor;" +
                     "varying vec4 vColor;" +
                     "void main() {" +
@@ -43,7 +47,7 @@ final class GlSceneRendererLines {
                     "  vColor.g = aColor.g * aColor.a;" +
                     "  vColor.b = aColor.b * aColor.a;" +
                     "  vColor.a = aColor.a;" +
-                    "  gl_Position = uMVPMatrix * vPosition;" +
+                    "  gl_Position = uMVPMatrix * vec4(vPosition * uPositionScale, 0.0, 1.0);" +
                     "}";
 
     private static final String FRAGMENT_SHADER_CODE =
@@ -53,293 +57,661 @@ final class GlSceneRendererLines {
                     "  gl_FragColor = vColor;" +
                     "}";
 
-    private static final int BYTES_PER_FLOAT = 4;
-    private static final int COORDINATES_PER_VERTEX = 2;
-    private static final int COLOR_BYTES_PER_VERTEX = 4;
-    private static final int VERTICES_PER_THIN_LINE = 2;
-    private static final int VERTICES_PER_THICK_LINE = 6;
+    /**
+     * Extrudes a quad corner from both line endpoints. aCorner.x selects the endpoint (0 for start,
+     * 1 for end) and aCorner.y selects the side of the line (1 or -1).
+     */
+    private static final String VERTEX_SHADER_CODE_EXPANDED =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform float uPositionScale;" +
+                    "uniform float uLineThickness;" +
+                    "attribute vec2 aStart;" +
+                    "attribute vec2 aEnd;" +
+                    "attribute vec2 aCorner;" +
+                    "attribute vec4 aColor;" +
+                    "varying vec4 vColor;" +
+                    "void main() {" +
+                    "  vColor = vec4(aColor.rgb * aColor.a, aColor.a);" +
+                    "  vec2 start = aStart * uPositionScale;" +
+                    "  vec2 end = aEnd * uPositionScale;" +
+                    "  vec2 direction = end - start;" +
+                    "  float lineLength = length(direction);" +
+                    "  vec2 normal = lineLength > 0.0" +
+                    "      ? vec2(-direction.y, direction.x) / lineLength" +
+                    "      : vec2(0.0);" +
+                    "  vec2 position = mix(start, end, aCorner.x)" +
+                    "      + normal * (0.5 * uLineThickness * aCorner.y);" +
+                    "  gl_Position = uMVPMatrix * vec4(position, 0.0, 1.0);" +
+                    "}";
 
-    private ByteBuffer lineColorBuffer;
-    private FloatBuffer lineCoordinatesBuffer;
+    /**
+     * Same extrusion as {@link #VERTEX_SHADER_CODE_EXPANDED}, widened by half a pixel on each side.
+     * vEdge is the signed distance from the line center in pixels, used for edge falloff.
+     */
+    private static final String VERTEX_SHADER_CODE_ANTIALIASED =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform float uPositionScale;" +
+                    "uniform float uLineThickness;" +
+                    "attribute vec2 aStart;" +
+                    "attribute vec2 aEnd;" +
+                    "attribute vec2 aCorner;" +
+                    "attribute vec4 aColor;" +
+                    "varying vec4 vColor;" +
+                    "varying float vEdge;" +
+                    "varying float vHalfWidth;" +
+                    "void main() {" +
+                    "  vColor = vec4(aColor.rgb * aColor.a, aColor.a);" +
+                    "  vec2 start = aStart * uPositionScale;" +
+                    "  vec2 end = aEnd * uPositionScale;" +
+                    "  vec2 direction = end - start;" +
+                    "  float lineLength = length(direction);" +
+                    "  vec2 normal = lineLength > 0.0" +
+                    "      ? vec2(-direction.y, direction.x) / lineLength" +
+                    "      : vec2(0.0);" +
+                    "  vHalfWidth = 0.5 * uLineThickness + 0.5;" +
+                    "  vEdge = vHalfWidth * aCorner.y;" +
+                    "  vec2 position = mix(start, end, aCorner.x) + normal * vEdge;" +
+                    "  gl_Position = uMVPMatrix * vec4(position, 0.0, 1.0);" +
+                    "}";
 
-    private boolean lineAsTriangles = false;
-    private int lineVerticesCount;
+    /**
+     * Fades alpha over the last pixel of the line on each side.
+     */
+    private static final String FRAGMENT_SHADER_CODE_ANTIALIASED =
+            "precision mediump float;" +
+                    "varying vec4 vColor;" +
+                    "varying float vEdge;" +
+                    "varying float vHalfWidth;" +
+                    "void main() {" +
+                    "  gl_FragColor = vColor * clamp(vHalfWidth - abs(vEdge), 0.0, 1.0);" +
+                    "}";
 
-    private int program;
+    private static final String[] ATTRIBUTES = {"vPosition", "aColor", "aStart", "aEnd", "aCorner"};
+    private static final int ATTRIBUTE_POSITION = 0;
+    private static final int ATTRIBUTE_COLOR = 1;
+    private static final int ATTRIBUTE_START = 2;
+    private static final int ATTRIBUTE_END = 3;
+    private static final int ATTRIBUTE_CORNER = 4;
 
-    void init() {
-        final int vertexShader = ShaderLoader.loadShader(
-                GLES20.GL_VERTEX_SHADER,
-                VERTEX_SHADER_CODE);
-        GLErrorChecker.checkGlError("lines glCompileShader vertex");
+    private static final String[] UNIFORMS = {"uMVPMatrix", "uLineThickness", "uPositionScale"};
+    private static final int UNIFORM_MVP_MATRIX = 0;
+    private static final int UNIFORM_LINE_THICKNESS = 1;
+    private static final int UNIFORM_POSITION_SCALE = 2;
 
-        final int fragmentShader = ShaderLoader.loadShader(
-                GLES20.GL_FRAGMENT_SHADER,
-                FRAGMENT_SHADER_CODE);
-        GLErrorChecker.checkGlError("lines glCompileShader fragment");
+    private static final int BYTES_PER_INT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+    private static final int COORDINATES_PER_VERTEX = 2;
+    private static final int CORNER_BYTES_PER_VERTEX = 2;
+    private static final int COLOR_BYTES_PER_VERTEX = 4;
 
-        program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLErrorChecker.checkGlError("lines glAttachShader vertex");
+    /**
+     * Interleaved vertex of short x, y and RGBA8 color.
+     */
+    private static final int BYTES_PER_VERTEX =
+            COORDINATES_PER_VERTEX * BYTES_PER_SHORT + COLOR_BYTES_PER_VERTEX;
+
+    /**
+     * Interleaved vertex of short start x, y, short end x, y and RGBA8 color.
+     */
+    private static final int BYTES_PER_EXPANDED_VERTEX =
+            2 * COORDINATES_PER_VERTEX * BYTES_PER_SHORT + COLOR_BYTES_PER_VERTEX;
+
+    private static final int VERTICES_PER_INDEXED_THICK_LINE =
+            LineVerticesResolver.VERTICES_PER_INDEXED_THICK_LINE;
+    private static final int INDICES_PER_INDEXED_THICK_LINE = 6;
+
+    /**
+     * Max quads per draw when indices are limited to GL_UNSIGNED_SHORT, so that the highest vertex
+     * index stays below 65535.
+     */
+    private static final int MAX_QUADS_PER_SHORT_INDEXED_DRAW = 16383;
+
+    /**
+     * Max multiplier of positions, gives 1/16 pixel precision.
+     */
+    private static final float MAX_POSITION_SCALE = 16f;
+
+    private static final String EXTENSION_ELEMENT_INDEX_UINT = "GL_OES_element_index_uint";
+
+    /**
+     * Corners of a quad in order of
+     * {@link LineVerticesResolver#putLineQuad(int, int, int, int, int)}.
+     */
+    private static final byte[] CORNERS = {
+            0, 1,
+            1, 1,
+            1, -1,
+            0, -1
+    };
+
+    /**
+     * Vertex offsets of the two triangles of a quad in the static index buffer.
+     */
+    private static final byte[] QUAD_INDEX_OFFSETS = {
+            0, 1, 3,
+            1, 2, 3
+    };
+
+    private final LineVerticesResolver lineVerticesResolver = new LineVerticesResolver();
+
+    private final LineColorTable lineColorTable = new LineColorTable();
+
+    private final ViewportCuller viewportCuller = new ViewportCuller();
+    private volatile float foregroundTranslationX;
+
+    private final LineSelector lineSelector = new LineSelector();
+    private volatile int maxLines = LineSelector.UNLIMITED;
+    private volatile int maxLinesPerParticle = LineSelector.UNLIMITED;
+
+    private volatile boolean parallelLineGeneration;
+    private ParallelLineVerticesResolver parallelLineVerticesResolver;
+
+    /**
+     * The frame for {@link #drawScene(Scene, float[])}.
+     */
+    private final GlLineFrame frame = new GlLineFrame();
+
+    private volatile boolean indexedThickLines;
+    private volatile boolean shaderExpandedThickLines;
+    private volatile boolean antialiased;
+
+    private boolean elementIndexUintSupported;
+    private final int[] indexBuffer = new int[1];
+    private int indexBufferQuads;
+
+    private final int[] cornerBuffer = new int[1];
+    private int cornerBufferQuads;
+
+    @NonNull
+    private final GlStateTracker stateTracker;
+
+    private GlResourceCache resourceCache;
+    private GlProgram program;
+    private GlProgram expandedProgram;
+    private GlProgram antialiasedProgram;
+
+    GlSceneRendererLines(@NonNull final GlStateTracker stateTracker) {
+        this.stateTracker = stateTracker;
+    }
 
-        GLES20.glAttachShader(program, fragmentShader);
-        GLErrorChecker.checkGlError("lines glAttachShader fragment");
+    void init(@NonNull final GlResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+        program = resourceCache.acquireProgram(
+                "lines",
+                VERTEX_SHADER_CODE,
+                FRAGMENT_SHADER_CODE,
+                ATTRIBUTES,
+                UNIFORMS);
+
+        final String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        elementIndexUintSupported = extensions != null
+                && extensions.contains(EXTENSION_ELEMENT_INDEX_UINT);
+
+        // Created on first use for the new context
+        expandedProgram = null;
+        antialiasedProgram = null;
+        indexBuffer[0] = 0;
+        indexBufferQuads = 0;
+        cornerBuffer[0] = 0;
+        cornerBufferQuads = 0;
+    }
 
-        GLES20.glLinkProgram(program);
-        GLErrorChecker.checkGlError("lines glLinkProgram");
+    /**
+     * Enables indexed mode for thick lines, where every line is a quad of 4 unique vertices drawn
+     * with a static index buffer, instead of 6 vertices of two triangles.
+     */
+    void setIndexedThickLines(final boolean indexedThickLines) {
+        this.indexedThickLines = indexedThickLines;
     }
 
-    private void initBuffers(final int vertexCount) {
-        final int segmentsCount = segmentsCount(vertexCount);
+    /**
+     * Enables mode for thick lines, where every line uploads only its two endpoints and the vertex
+     * shader extrudes them into a quad. Implies indexed drawing.
+     */
+    void setShaderExpandedThickLines(final boolean shaderExpandedThickLines) {
+        this.shaderExpandedThickLines = shaderExpandedThickLines;
+    }
 
-        initCoordinates(segmentsCount, lineAsTriangles
-                ? VERTICES_PER_THICK_LINE : VERTICES_PER_THIN_LINE);
+    /**
+     * Enables antialiased mode, where lines of any thickness are drawn as shader-expanded quads
+     * with alpha falloff over the edge pixel, so that multisampling is not needed.
+     */
+    void setAntialiased(final boolean antialiased) {
+        this.antialiased = antialiased;
+    }
 
-        initLineColorBuffer(segmentsCount, lineAsTriangles
-                ? VERTICES_PER_THICK_LINE : VERTICES_PER_THIN_LINE);
+    /**
+     * Enables resolving line vertices on worker threads, one slice of particles per worker. Has
+     * no effect on single core devices.
+     */
+    void setParallelLineGeneration(final boolean parallelLineGeneration) {
+        this.parallelLineGeneration = parallelLineGeneration;
+    }
 
-        lineVerticesCount = 0;
+    /**
+     * Limits the number of lines per frame, keeping the shortest ones. Lines are resolved on the
+     * calling thread of {@link #prepare(Scene, GlLineFrame)} while limited, even if parallel line
+     * generation is enabled.
+     *
+     * @see LineSelector#setLimits(int, int)
+     */
+    void setLineBudget(final int maxLines, final int maxLinesPerParticle) {
+        if (maxLines < 0 || maxLinesPerParticle < 0) {
+            throw new IllegalArgumentException("Line budget must not be negative");
+        }
+        this.maxLines = maxLines;
+        this.maxLinesPerParticle = maxLinesPerParticle;
     }
 
-    private int segmentsCount(final int vertices) {
-        return (vertices * (vertices - 1)) / 2;
+    /**
+     * Sets the translation lines are drawn with, so that lines outside the viewport are culled.
+     */
+    void setForegroundTranslationX(final float foregroundTranslationX) {
+        this.foregroundTranslationX = foregroundTranslationX;
     }
 
-    private void initCoordinates(final int segmentsCount, final int verticesPerLine) {
-        final int shortcapacity = segmentsCount * verticesPerLine * COORDINATES_PER_VERTEX;
-        if (lineCoordinatesBuffer == null || lineCoordinatesBuffer.capacity() != shortcapacity) {
-            final ByteBuffer coordinatesByteBuffer = ByteBuffer.allocateDirect(
-                    shortcapacity * BYTES_PER_FLOAT);
-            coordinatesByteBuffer.order(ByteOrder.nativeOrder());
-            lineCoordinatesBuffer = coordinatesByteBuffer.asFloatBuffer();
+    /**
+     * Stops worker threads used for parallel line generation. They are started again when needed.
+     */
+    void releaseWorkers() {
+        if (parallelLineVerticesResolver != null) {
+            parallelLineVerticesResolver.shutdown();
+            parallelLineVerticesResolver = null;
         }
     }
 
-    private void initLineColorBuffer(final int lineCount, final int verticesPerLine) {
-        final int targetCapacity = lineCount * verticesPerLine * COLOR_BYTES_PER_VERTEX;
-        if (lineColorBuffer == null || lineColorBuffer.capacity() != targetCapacity) {
-            lineColorBuffer = ByteBuffer.allocateDirect(targetCapacity);
-            lineColorBuffer.order(ByteOrder.nativeOrder());
+    void recycle() {
+        releasePrograms();
+        if (indexBuffer[0] != 0) {
+            GLES20.glDeleteBuffers(1, indexBuffer, 0);
+            stateTracker.onBufferDeleted(indexBuffer[0]);
+            indexBuffer[0] = 0;
+            indexBufferQuads = 0;
+        }
+        if (cornerBuffer[0] != 0) {
+            GLES20.glDeleteBuffers(1, cornerBuffer, 0);
+            stateTracker.onBufferDeleted(cornerBuffer[0]);
+            cornerBuffer[0] = 0;
+            cornerBufferQuads = 0;
         }
     }
 
-    void drawScene(
-            @NonNull final Scene scene,
-            @NonNull final float[] matrix) {
-        lineAsTriangles = scene.getLineThickness() >= 2f;
-        initBuffers(scene.getDensity());
-        resolveLines(scene);
-        drawLines(matrix);
+    private void releasePrograms() {
+        program = releaseProgram(program);
+        expandedProgram = releaseProgram(expandedProgram);
+        antialiasedProgram = releaseProgram(antialiasedProgram);
     }
 
-    private void resolveLines(@NonNull final Scene scene) {
-        lineColorBuffer.clear();
-        lineCoordinatesBuffer.clear();
-
-        final int particlesCount = scene.getDensity();
-        if (particlesCount != 0) {
-            for (int i = 0; i < particlesCount; i++) {
-
-                final float x1 = scene.getParticleX(i);
-                final float y1 = scene.getParticleY(i);
-
-                // Draw connection lines for eligible particles
-                for (int j = i + 1; j < particlesCount; j++) {
-
-                    final float x2 = scene.getParticleX(j);
-                    final float y2 = scene.getParticleY(j);
-
-                    final float distance = DistanceResolver.distance(x1, y1, x2, y2);
-                    if (distance < scene.getLineLength()) {
-                        final int lineColor = LineColorResolver.resolveLineColorWithAlpha(
-                                scene.getAlpha(),
-                                scene.getLineColor(),
-                                scene.getLineLength(),
-                                distance);
-
-                        resolveLine(
-                                x1,
-                                y1,
-                                x2,
-                                y2,
-                                lineColor,
-                                distance,
-                                scene.getLineThickness());
-                    }
-                }
-            }
+    @Nullable
+    private GlProgram releaseProgram(@Nullable final GlProgram program) {
+        if (program != null) {
+            resourceCache.releaseProgram(program);
+            stateTracker.onProgramDeleted(program.getHandle());
         }
+        return null;
     }
 
-    private void resolveLine(
-            final float startX,
-            final float startY,
-            final float stopX,
-            final float stopY,
-            @ColorInt final int color,
-            final float lineLength,
-            final float lineThickness) {
-        if (lineAsTriangles) {
-            resolveThickLine(startX, startY, stopX, stopY, color, lineLength, lineThickness);
-        } else {
-            resolveThinLine(startX, startY, stopX, stopY, color);
+    private static int resolveBytesPerVertex(@NonNull final GlLineFrame frame) {
+        return frame.asExpandedQuads ? BYTES_PER_EXPANDED_VERTEX : BYTES_PER_VERTEX;
+    }
+
+    private int segmentsCount(final int vertices) {
+        return (vertices * (vertices - 1)) / 2;
+    }
+
+    /**
+     * Resolves the largest power of two multiplier, up to {@link #MAX_POSITION_SCALE}, that keeps
+     * scene coordinates within short range. Particles are kept alive up to line length plus
+     * particle radius outside the scene bounds, so that margin is reserved on both sides.
+     */
+    @VisibleForTesting
+    static float resolvePositionScale(@NonNull final Scene scene) {
+        final float extent = Math.max(scene.getWidth(), scene.getHeight())
+                + 2f * (scene.getLineLength() + scene.getParticleRadiusMax())
+                + scene.getLineThickness();
+
+        float scale = MAX_POSITION_SCALE;
+        while (scale * extent > Short.MAX_VALUE) {
+            scale *= 0.5f;
         }
+        return scale;
     }
 
-    private void resolveThinLine(
-            final float startX,
-            final float startY,
-            final float stopX,
-            final float stopY,
-            @ColorInt final int color) {
-        lineCoordinatesBuffer.put(startX);
-        lineCoordinatesBuffer.put(startY);
-        lineCoordinatesBuffer.put(stopX);
-        lineCoordinatesBuffer.put(stopY);
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineVerticesCount += VERTICES_PER_THIN_LINE;
+    void drawScene(
+            @NonNull final Scene scene,
+            @NonNull final float[] matrix) {
+        prepare(scene, frame);
+        draw(frame, matrix);
     }
 
-    private void resolveThickLine(
-            final float startX,
-            final float startY,
-            final float stopX,
-            final float stopY,
-            @ColorInt final int color,
-            final float lineLength,
-            final float lineThickness) {
-        // Based on https://stackoverflow.com/a/1937202/1366471
-        final float dx = (stopX - startX) / lineLength; //delta x
-        final float dy = (stopY - startY) / lineLength; //delta y
-
-        //Ok, (dx, dy) is now a unit vector pointing in the direction of the line
-        //A perpendicular vector is given by (-dy, dx)
-        final float px = 0.5f * lineThickness * (-dy); //perpendicular vector with lenght thickness * 0.5
-        final float py = 0.5f * lineThickness * dx;
-
-        final float x1 = startX + px;
-        final float y1 = startY + py;
-
-        final float x2 = stopX + px;
-        final float y2 = stopY + py;
-
-        final float x3 = stopX - px;
-        final float y3 = stopY - py;
-
-        final float x4 = startX - px;
-        final float y4 = startY - py;
-
-        putLineTrianglesBasedOnQuad(
-                x1, y1,
-                x2, y2,
-                x3, y3,
-                x4, y4);
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineColorBuffer.put((byte) Color.red(color));
-        lineColorBuffer.put((byte) Color.green(color));
-        lineColorBuffer.put((byte) Color.blue(color));
-        lineColorBuffer.put((byte) Color.alpha(color));
-
-        lineVerticesCount += VERTICES_PER_THICK_LINE;
+    /**
+     * Resolves line vertices of the scene into the frame. Does not make GL calls, so it may be
+     * called from any thread, but not concurrently with itself.
+     */
+    void prepare(@NonNull final Scene scene, @NonNull final GlLineFrame frame) {
+        final boolean antialiased = this.antialiased;
+        frame.asTriangles = antialiased || scene.getLineThickness() >= 2f;
+        frame.asExpandedQuads = frame.asTriangles && (antialiased || shaderExpandedThickLines);
+        frame.asAntialiasedQuads = antialiased;
+        frame.asIndexedQuads = frame.asTriangles
+                && (indexedThickLines || frame.asExpandedQuads);
+        frame.lineThickness = scene.getLineThickness();
+        frame.positionScale = resolvePositionScale(scene);
+
+        lineVerticesResolver.configure(
+                frame.asTriangles,
+                frame.asIndexedQuads,
+                frame.asExpandedQuads,
+                frame.positionScale);
+
+        frame.ensureCapacity(segmentsCount(scene.getDensity())
+                * lineVerticesResolver.getVerticesPerLine()
+                * resolveBytesPerVertex(frame));
+
+        resolveLines(scene, frame);
     }
 
-    private void putLineTrianglesBasedOnQuad(
-            final float x1,
-            final float y1,
-            final float x2,
-            final float y2,
-            final float x3,
-            final float y3,
-            final float x4,
-            final float y4
-    ) {
-        lineCoordinatesBuffer.put(x1);
-        lineCoordinatesBuffer.put(y1);
-
-        lineCoordinatesBuffer.put(x2);
-        lineCoordinatesBuffer.put(y2);
-
-        lineCoordinatesBuffer.put(x4);
-        lineCoordinatesBuffer.put(y4);
-
-        lineCoordinatesBuffer.put(x2);
-        lineCoordinatesBuffer.put(y2);
-
-        lineCoordinatesBuffer.put(x3);
-        lineCoordinatesBuffer.put(y3);
-
-        lineCoordinatesBuffer.put(x4);
-        lineCoordinatesBuffer.put(y4);
+    private void resolveLines(@NonNull final Scene scene, @NonNull final GlLineFrame frame) {
+        frame.vertexWords.clear();
+        lineColorTable.update(scene);
+        viewportCuller.update(scene, foregroundTranslationX);
+
+        lineSelector.setLimits(maxLines, maxLinesPerParticle);
+        if (lineSelector.isLimited()) {
+            lineSelector.select(scene, lineColorTable, viewportCuller);
+            lineVerticesResolver.begin(frame.vertexWords);
+            lineVerticesResolver.resolveSelected(scene, lineColorTable, lineSelector);
+            lineVerticesResolver.finish();
+            frame.verticesCount = lineVerticesResolver.getVerticesCount();
+            return;
+        }
+
+        final ParallelLineVerticesResolver parallelResolver = resolveParallelResolver();
+        if (parallelResolver != null) {
+            frame.verticesCount = parallelResolver.resolve(
+                    scene,
+                    lineColorTable,
+                    viewportCuller,
+                    frame.vertexWords,
+                    frame.asTriangles,
+                    frame.asIndexedQuads,
+                    frame.asExpandedQuads,
+                    frame.positionScale);
+            return;
+        }
+
+        lineVerticesResolver.begin(frame.vertexWords);
+        lineVerticesResolver.resolve(
+                scene, lineColorTable, viewportCuller, 0, scene.getDensity());
+        lineVerticesResolver.finish();
+        frame.verticesCount = lineVerticesResolver.getVerticesCount();
     }
 
-    private void drawLines(@NonNull final float[] matrix) {
-        lineCoordinatesBuffer.position(0);
-        lineColorBuffer.position(0);
+    @Nullable
+    private ParallelLineVerticesResolver resolveParallelResolver() {
+        if (!parallelLineGeneration) {
+            return null;
+        }
+        if (parallelLineVerticesResolver == null) {
+            final int workersCount = ParallelLineVerticesResolver.resolveWorkersCount();
+            if (workersCount < 2) {
+                return null;
+            }
+            parallelLineVerticesResolver = new ParallelLineVerticesResolver(workersCount);
+        }
+        return parallelLineVerticesResolver;
+    }
 
-        GLES20.glUseProgram(program);
+    /**
+     * Draws the prepared frame. Must be called on the GL thread.
+     */
+    void draw(@NonNull final GlLineFrame frame, @NonNull final float[] matrix) {
+        final GlProgram program = resolveProgram(frame);
+        stateTracker.useProgram(program);
+        stateTracker.bindArrayBuffer(0);
         GLErrorChecker.checkGlError("lines glUseProgram");
 
-        final int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
-        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glUniformMatrix4fv(
+                program.getUniformLocation(UNIFORM_MVP_MATRIX), 1, false, matrix, 0);
 
-        GLES20.glVertexAttribPointer(
-                positionHandle,
-                COORDINATES_PER_VERTEX,
-                GLES20.GL_FLOAT,
-                false,
-                0,
-                lineCoordinatesBuffer);
+        GLES20.glUniform1f(
+                program.getUniformLocation(UNIFORM_POSITION_SCALE), 1f / frame.positionScale);
+
+        if (frame.asExpandedQuads) {
+            GLES20.glUniform1f(
+                    program.getUniformLocation(UNIFORM_LINE_THICKNESS), frame.lineThickness);
+        }
+
+        if (frame.asIndexedQuads) {
+            drawIndexedQuads(
+                    program, frame, frame.verticesCount / VERTICES_PER_INDEXED_THICK_LINE);
+        } else {
+            putAttributePointers(program, frame, 0);
+            GLES20.glDrawArrays(
+                    frame.asTriangles ? GLES20.GL_TRIANGLES : GLES20.GL_LINES,
+                    0,
+                    frame.verticesCount);
+            GLErrorChecker.checkGlError("lines glDrawArrays");
+        }
+    }
 
-        final int colorHandle = GLES20.glGetAttribLocation(program, "aColor");
-        GLES20.glEnableVertexAttribArray(colorHandle);
+    @NonNull
+    private GlProgram resolveProgram(@NonNull final GlLineFrame frame) {
+        if (frame.asAntialiasedQuads) {
+            if (antialiasedProgram == null) {
+                antialiasedProgram = resourceCache.acquireProgram(
+                        "lines antialiased",
+                        VERTEX_SHADER_CODE_ANTIALIASED,
+                        FRAGMENT_SHADER_CODE_ANTIALIASED,
+                        ATTRIBUTES,
+                        UNIFORMS);
+            }
+            return antialiasedProgram;
+        }
+        if (frame.asExpandedQuads) {
+            if (expandedProgram == null) {
+                expandedProgram = resourceCache.acquireProgram(
+                        "lines expanded",
+                        VERTEX_SHADER_CODE_EXPANDED,
+                        FRAGMENT_SHADER_CODE,
+                        ATTRIBUTES,
+                        UNIFORMS);
+            }
+            return expandedProgram;
+        }
+        return program;
+    }
+
+    /**
+     * Points all interleaved attributes at the specified vertex of the frame.
+     */
+    private static void putAttributePointers(
+            @NonNull final GlProgram program,
+            @NonNull final GlLineFrame frame,
+            final int firstVertex) {
+        final ByteBuffer lineVertexBuffer = frame.vertexBuffer;
+        final int stride = resolveBytesPerVertex(frame);
+        final int firstByte = firstVertex * stride;
+        final int positionBytes = COORDINATES_PER_VERTEX * BYTES_PER_SHORT;
+
+        if (frame.asExpandedQuads) {
+            lineVertexBuffer.position(firstByte);
+            GLES20.glVertexAttribPointer(
+                    program.getAttributeLocation(ATTRIBUTE_START),
+                    COORDINATES_PER_VERTEX,
+                    GLES20.GL_SHORT,
+                    false,
+                    stride,
+                    lineVertexBuffer);
+
+            lineVertexBuffer.position(firstByte + positionBytes);
+            GLES20.glVertexAttribPointer(
+                    program.getAttributeLocation(ATTRIBUTE_END),
+                    COORDINATES_PER_VERTEX,
+                    GLES20.GL_SHORT,
+                    false,
+                    stride,
+                    lineVertexBuffer);
+
+            lineVertexBuffer.position(firstByte + 2 * positionBytes);
+        } else {
+            lineVertexBuffer.position(firstByte);
+            GLES20.glVertexAttribPointer(
+                    program.getAttributeLocation(ATTRIBUTE_POSITION),
+                    COORDINATES_PER_VERTEX,
+                    GLES20.GL_SHORT,
+                    false,
+                    stride,
+                    lineVertexBuffer);
+
+            lineVertexBuffer.position(firstByte + positionBytes);
+        }
 
         GLES20.glVertexAttribPointer(
-                colorHandle,
+                program.getAttributeLocation(ATTRIBUTE_COLOR),
                 COLOR_BYTES_PER_VERTEX,
                 GLES20.GL_UNSIGNED_BYTE,
                 true,
-                0,
-                lineColorBuffer);
+                stride,
+                lineVertexBuffer);
+    }
+
+    private void drawIndexedQuads(
+            @NonNull final GlProgram program,
+            @NonNull final GlLineFrame frame,
+            final int quadsCount) {
+        if (quadsCount == 0) {
+            return;
+        }
+
+        // Rounded up to a power of two so that it is rarely re-uploaded while the number of
+        // lines varies between frames
+        final int quadsCapacity = frame.vertexBuffer.capacity()
+                / (VERTICES_PER_INDEXED_THICK_LINE * resolveBytesPerVertex(frame));
+        final int quadsToFit = resolveQuadsToFit(quadsCount, quadsCapacity);
+
+        if (frame.asExpandedQuads) {
+            // Corners repeat for every quad, so the pointer does not move between chunks
+            ensureCornerBuffer(elementIndexUintSupported
+                    ? quadsToFit
+                    : Math.min(quadsToFit, MAX_QUADS_PER_SHORT_INDEXED_DRAW));
+            GLES20.glVertexAttribPointer(
+                    program.getAttributeLocation(ATTRIBUTE_CORNER),
+                    CORNER_BYTES_PER_VERTEX,
+                    GLES20.GL_BYTE,
+                    false,
+                    0,
+                    0);
+            stateTracker.bindArrayBuffer(0);
+        }
+
+        if (elementIndexUintSupported) {
+            ensureIndexBuffer(quadsToFit);
+            putAttributePointers(program, frame, 0);
+            GLES20.glDrawElements(
+                    GLES20.GL_TRIANGLES,
+                    quadsCount * INDICES_PER_INDEXED_THICK_LINE,
+                    GLES20.GL_UNSIGNED_INT,
+                    0);
+        } else {
+            ensureIndexBuffer(Math.min(quadsToFit, MAX_QUADS_PER_SHORT_INDEXED_DRAW));
+            for (int first = 0; first < quadsCount; first += MAX_QUADS_PER_SHORT_INDEXED_DRAW) {
+                final int count = Math.min(MAX_QUADS_PER_SHORT_INDEXED_DRAW, quadsCount - first);
+                putAttributePointers(program, frame, first * VERTICES_PER_INDEXED_THICK_LINE);
+                GLES20.glDrawElements(
+                        GLES20.GL_TRIANGLES,
+                        count * INDICES_PER_INDEXED_THICK_LINE,
+                        GLES20.GL_UNSIGNED_SHORT,
+                        0);
+            }
+        }
+        GLErrorChecker.checkGlError("lines glDrawElements");
+    }
+
+    /**
+     * @return the number of quads to size static buffers for, the quads count rounded up to the
+     * next power of two, but no more than the quads capacity of the vertex buffer
+     */
+    @VisibleForTesting
+    static int resolveQuadsToFit(final int quadsCount, final int quadsCapacity) {
+        final int rounded = quadsCount > 1 ? Integer.highestOneBit(quadsCount - 1) << 1 : 1;
+        return rounded > 0 ? Math.min(rounded, quadsCapacity) : quadsCapacity;
+    }
+
+    /**
+     * Makes sure the static index buffer is bound and has indices for at least the specified
+     * number of quads. The buffer only grows, so it is rarely uploaded again.
+     */
+    private void ensureIndexBuffer(final int quadsCount) {
+        if (indexBuffer[0] == 0) {
+            GLES20.glGenBuffers(1, indexBuffer, 0);
+        }
+        stateTracker.bindElementArrayBuffer(indexBuffer[0]);
+
+        if (indexBufferQuads < quadsCount) {
+            final ByteBuffer indices = resolveQuadIndices(quadsCount, elementIndexUintSupported);
+            GLES20.glBufferData(
+                    GLES20.GL_ELEMENT_ARRAY_BUFFER,
+                    indices.capacity(),
+                    indices,
+                    GLES20.GL_STATIC_DRAW);
+            GLErrorChecker.checkGlError("lines glBufferData indices");
+            indexBufferQuads = quadsCount;
+        }
+    }
 
-        final int mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, matrix, 0);
+    /**
+     * Makes sure the static corner buffer is bound and has corners for at least the specified
+     * number of quads.
+     */
+    private void ensureCornerBuffer(final int quadsCount) {
+        if (cornerBuffer[0] == 0) {
+            GLES20.glGenBuffers(1, cornerBuffer, 0);
+        }
+        stateTracker.bindArrayBuffer(cornerBuffer[0]);
 
-        GLES20.glDrawArrays(lineAsTriangles ? GLES20.GL_TRIANGLES : GLES20.GL_LINES, 0, lineVerticesCount);
-        GLErrorChecker.checkGlError("lines glDrawArrays");
+        if (cornerBufferQuads < quadsCount) {
+            final int size = quadsCount * CORNERS.length;
+            final ByteBuffer corners = ByteBuffer.allocateDirect(size);
+            for (int quad = 0; quad < quadsCount; quad++) {
+                corners.put(CORNERS);
+            }
+            corners.position(0);
+            GLES20.glBufferData(
+                    GLES20.GL_ARRAY_BUFFER,
+                    size,
+                    corners,
+                    GLES20.GL_STATIC_DRAW);
+            GLErrorChecker.checkGlError("lines glBufferData corners");
+            cornerBufferQuads = quadsCount;
+        }
+    }
+
+    /**
+     * Resolves indices of two triangles per quad, (0, 1, 3) and (1, 2, 3), same as
+     * {@link LineVerticesResolver#putLineTrianglesBasedOnQuad(int, int, int, int, int)}.
+     *
+     * @param quadsCount the number of quads
+     * @param uint       whether to use 32-bit indices instead of 16-bit
+     * @return the native order indices, ready to upload
+     */
+    @NonNull
+    private static ByteBuffer resolveQuadIndices(final int quadsCount, final boolean uint) {
+        final int indicesCount = quadsCount * INDICES_PER_INDEXED_THICK_LINE;
+        final ByteBuffer indices = ByteBuffer
+                .allocateDirect(indicesCount * (uint ? BYTES_PER_INT : BYTES_PER_SHORT))
+                .order(ByteOrder.nativeOrder());
+        for (int quad = 0; quad < quadsCount; quad++) {
+            final int vertex = quad * VERTICES_PER_INDEXED_THICK_LINE;
+            for (final byte offset : QUAD_INDEX_OFFSETS) {
+                if (uint) {
+                    indices.putInt(vertex + offset);
+                } else {
+                    indices.putShort((short) (vertex + offset));
+                }
+            }
+        }
+        indices.position(0);
+        return indices;
     }
 }
@@ -17,14 +17,17 @@ package com.doctoror.particlesdrawable.opengl.renderer;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
 import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.model.SceneChangeTracker;
 import com.doctoror.particlesdrawable.opengl.util.GLErrorChecker;
 import com.doctoror.particlesdrawable.opengl.util.PotCalculator;
-import com.doctoror.particlesdrawable.opengl.util.ShaderLoader;
+import com.doctoror.particlesdrawable.util.ParticleColorResolver;
+import com.doctoror.particlesdrawable.util.ViewportCuller;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -32,9 +35,12 @@ import java.nio.FloatBuffer;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 final class GlSceneRendererParticles {
 
+    private static final String TEXTURE_KEY_PREFIX = "particle:";
+
     private static final String VERTEX_SHADER_CODE =
             "uniform mat4 uMVPMatrix;" +
                     "attribute vec4 vPosition;" +
@@ -45,50 +51,247 @@ final class GlSceneRendererParticles {
                     "  vTexCoord = aTexCoord;" +
                     "}";
 
+    /**
+     * The texture is an alpha mask, and the color is a premultiplied particle color with the scene
+     * alpha applied, so that color and alpha changes never require a texture upload.
+     */
     private static final String FRAGMENT_SHADER_CODE =
             "precision mediump float;" +
                     "varying vec2 vTexCoord;" +
                     "uniform sampler2D sTexture;" +
+                    "uniform vec4 uColor;" +
+                    "void main() {" +
+                    "  gl_FragColor = uColor * texture2D(sTexture, vTexCoord).a;" +
+                    "}";
+
+    /**
+     * Same as {@link #VERTEX_SHADER_CODE}, but also passes particle radius for
+     * {@link #FRAGMENT_SHADER_CODE_TEXTURELESS}.
+     */
+    private static final String VERTEX_SHADER_CODE_TEXTURELESS =
+            "uniform mat4 uMVPMatrix;" +
+                    "attribute vec4 vPosition;" +
+                    "attribute vec2 aTexCoord;" +
+                    "attribute float aRadius;" +
+                    "varying vec2 vTexCoord;" +
+                    "varying float vRadius;" +
+                    "void main() {" +
+                    "  gl_Position = uMVPMatrix * vPosition;" +
+                    "  vTexCoord = aTexCoord;" +
+                    "  vRadius = aRadius;" +
+                    "}";
+
+    /**
+     * Draws an antialiased circle from the distance to the quad center, without a texture. The
+     * quad is larger than the circle by {@link #TEXTURELESS_PADDING} on each side to leave room for
+     * the smooth edge.
+     */
+    private static final String FRAGMENT_SHADER_CODE_TEXTURELESS =
+            "precision mediump float;" +
+                    "varying vec2 vTexCoord;" +
+                    "varying float vRadius;" +
+                    "uniform vec4 uColor;" +
                     "void main() {" +
-                    "  gl_FragColor = texture2D(sTexture, vTexCoord);" +
+                    "  float distance = length(vTexCoord * 2.0 - 1.0) * (vRadius + 1.0);" +
+                    "  gl_FragColor = uColor * (1.0 - smoothstep(vRadius - 0.5, vRadius + 0.5, distance));" +
                     "}";
 
+    /**
+     * Vertex shader for analytic motion. Particle position is resolved from spawn origin,
+     * velocity and spawn time, so vertex data changes only when a particle is respawned.
+     */
+    private static final String VERTEX_SHADER_CODE_ANALYTIC =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform float uTime;" +
+                    "attribute vec2 aOrigin;" +
+                    "attribute vec2 aVelocity;" +
+                    "attribute float aSpawnTime;" +
+                    "attribute vec2 aCorner;" +
+                    "attribute float aRadius;" +
+                    "uniform float uPadding;" +
+                    "varying vec2 vTexCoord;" +
+                    "varying float vRadius;" +
+                    "void main() {" +
+                    "  vec2 center = aOrigin + aVelocity * (uTime - aSpawnTime);" +
+                    "  vec2 corner = aCorner * (aRadius + uPadding);" +
+                    "  gl_Position = uMVPMatrix * vec4(center + corner, 0.0, 1.0);" +
+                    "  vTexCoord = vec2(step(0.0, aCorner.x), 1.0 - step(0.0, aCorner.y));" +
+                    "  vRadius = aRadius;" +
+                    "}";
+
+    private static final String[] ATTRIBUTES = {
+            "vPosition",
+            "aTexCoord",
+            "aRadius",
+            "aOrigin",
+            "aVelocity",
+            "aSpawnTime",
+            "aCorner"
+    };
+
+    private static final int ATTRIBUTE_POSITION = 0;
+    private static final int ATTRIBUTE_TEX_COORD = 1;
+    private static final int ATTRIBUTE_RADIUS = 2;
+    private static final int ATTRIBUTE_ORIGIN = 3;
+    private static final int ATTRIBUTE_VELOCITY = 4;
+    private static final int ATTRIBUTE_SPAWN_TIME = 5;
+    private static final int ATTRIBUTE_CORNER = 6;
+
+    private static final String[] UNIFORMS = {"uMVPMatrix", "uColor", "uTime", "uPadding"};
+    private static final int UNIFORM_MVP_MATRIX = 0;
+    private static final int UNIFORM_COLOR = 1;
+    private static final int UNIFORM_TIME = 2;
+    private static final int UNIFORM_PADDING = 3;
+
     private static final int BYTES_PER_FLOAT = 4;
     private static final int COORDINATES_PER_VERTEX = 2;
     private static final int VERTICES_PER_PARTICLE = 6;
     private static final int TEXTURE_COORDINATES_PER_VERTEX = 6;
 
+    /**
+     * Must match the padding in {@link #FRAGMENT_SHADER_CODE_TEXTURELESS}.
+     */
+    private static final float TEXTURELESS_PADDING = 1f;
+
+    /**
+     * Origin (2), velocity (2), spawn time (1), corner (2) and radius (1).
+     */
+    private static final int ANALYTIC_FLOATS_PER_VERTEX = 8;
+    private static final int ANALYTIC_STRIDE = ANALYTIC_FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+    private static final int ANALYTIC_FLOATS_PER_PARTICLE =
+            ANALYTIC_FLOATS_PER_VERTEX * VERTICES_PER_PARTICLE;
+
+    /**
+     * Corner signs of the two triangles that make a particle quad.
+     */
+    private static final float[] CORNERS = {
+            -1f, -1f,
+            1f, -1f,
+            -1f, 1f,
+
+            1f, -1f,
+            -1f, 1f,
+            1f, 1f
+    };
+
     private FloatBuffer particlesTrianglesCoordinates;
     private ByteBuffer particlesTexturesCoordinates;
+    private FloatBuffer particlesRadiuses;
 
     private volatile boolean textureDirty;
 
-    private int program;
+    private final SceneChangeTracker radiusRangeTracker =
+            new SceneChangeTracker(Scene.PROPERTY_PARTICLE_RADIUS_RANGE);
+
+    private FloatBuffer analyticVertexData;
+    private int[] uploadedSpawnGenerations;
+    private final int[] analyticVertexBuffer = new int[1];
+    private int analyticVertexBufferParticles;
+
+    private volatile boolean analyticMotion;
+    private volatile boolean textureless;
+
+    private final ViewportCuller viewportCuller = new ViewportCuller();
+    private float foregroundTranslationX;
+
+    @NonNull
+    private final GlStateTracker stateTracker;
+
+    private GlResourceCache resourceCache;
+    private GlProgram program;
+    private GlProgram texturelessProgram;
+    private GlProgram analyticProgram;
+    private GlProgram analyticTexturelessProgram;
 
     private int textureId;
+    private String textureKey;
 
-    void init(final int textureId) {
-        this.textureId = textureId;
+    GlSceneRendererParticles(@NonNull final GlStateTracker stateTracker) {
+        this.stateTracker = stateTracker;
+    }
 
-        final int vertexShader = ShaderLoader.loadShader(
-                GLES20.GL_VERTEX_SHADER,
-                VERTEX_SHADER_CODE);
-        GLErrorChecker.checkGlError("particles glCompileShader vertex");
+    void init(@NonNull final GlResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
 
-        final int fragmentShader = ShaderLoader.loadShader(
-                GLES20.GL_FRAGMENT_SHADER,
-                FRAGMENT_SHADER_CODE);
-        GLErrorChecker.checkGlError("particles glCompileShader fragment");
+        program = createProgram(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
 
-        program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLErrorChecker.checkGlError("particles glAttachShader vertex");
+        // Compiled on first use, textures and buffers have to be recreated for the new context
+        textureId = 0;
+        textureKey = null;
+        texturelessProgram = null;
+        analyticProgram = null;
+        analyticTexturelessProgram = null;
+        analyticVertexBuffer[0] = 0;
+        analyticVertexBufferParticles = 0;
+    }
 
-        GLES20.glAttachShader(program, fragmentShader);
-        GLErrorChecker.checkGlError("particles glAttachShader fragment");
+    @NonNull
+    private GlProgram createProgram(
+            @NonNull final String vertexShaderCode,
+            @NonNull final String fragmentShaderCode) {
+        return resourceCache.acquireProgram(
+                "particles",
+                vertexShaderCode,
+                fragmentShaderCode,
+                ATTRIBUTES,
+                UNIFORMS);
+    }
+
+    /**
+     * Enables analytic motion mode, where particle spawn data is uploaded to a vertex buffer once
+     * per spawn, and positions are resolved in the vertex shader from {@link Scene#getMotionTime()}.
+     * The scene must be advanced with analytic motion as well.
+     */
+    void setAnalyticMotion(final boolean analyticMotion) {
+        this.analyticMotion = analyticMotion;
+    }
+
+    /**
+     * Enables textureless mode, where circles are drawn analytically in the fragment shader. This
+     * gives crisp edges at any radius and requires no particle texture.
+     */
+    void setTextureless(final boolean textureless) {
+        this.textureless = textureless;
+    }
+
+    /**
+     * Sets the translation particles are drawn with, so that particles outside the viewport are
+     * culled. Particles with analytic motion are positioned in the vertex shader and not culled.
+     */
+    void setForegroundTranslationX(final float foregroundTranslationX) {
+        this.foregroundTranslationX = foregroundTranslationX;
+    }
 
-        GLES20.glLinkProgram(program);
-        GLErrorChecker.checkGlError("particles glLinkProgram");
+    void recycle() {
+        program = releaseProgram(program);
+        texturelessProgram = releaseProgram(texturelessProgram);
+        analyticProgram = releaseProgram(analyticProgram);
+        analyticTexturelessProgram = releaseProgram(analyticTexturelessProgram);
+        releaseTexture();
+        if (analyticVertexBuffer[0] != 0) {
+            GLES20.glDeleteBuffers(1, analyticVertexBuffer, 0);
+            stateTracker.onBufferDeleted(analyticVertexBuffer[0]);
+            analyticVertexBuffer[0] = 0;
+            analyticVertexBufferParticles = 0;
+        }
+    }
+
+    @Nullable
+    private GlProgram releaseProgram(@Nullable final GlProgram program) {
+        if (program != null) {
+            resourceCache.releaseProgram(program);
+            stateTracker.onProgramDeleted(program.getHandle());
+        }
+        return null;
+    }
+
+    private void releaseTexture() {
+        if (textureId != 0) {
+            resourceCache.releaseTexture(textureKey, textureId);
+            stateTracker.onTextureDeleted(textureId);
+            textureId = 0;
+            textureKey = null;
+        }
     }
 
     void markTextureDirty() {
@@ -98,6 +301,19 @@ final class GlSceneRendererParticles {
     private void initBuffers(final int vertexCount) {
         initParticleTrianglesBuffer(vertexCount);
         initParticleTexturesBuffer(vertexCount);
+        if (textureless) {
+            initParticleRadiusesBuffer(vertexCount);
+        }
+    }
+
+    private void initParticleRadiusesBuffer(final int vertexCount) {
+        final int capacity = vertexCount * VERTICES_PER_PARTICLE;
+        if (particlesRadiuses == null || particlesRadiuses.capacity() != capacity) {
+            particlesRadiuses = ByteBuffer
+                    .allocateDirect(capacity * BYTES_PER_FLOAT)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+        }
     }
 
     private void initParticleTrianglesBuffer(final int vertexCount) {
@@ -140,41 +356,67 @@ final class GlSceneRendererParticles {
         }
     }
 
-    private void reloadTextureIfDirty(
-            @ColorInt final int color,
-            final float maxParticleRadius) {
-        if (textureDirty) {
-            generateAndLoadTexture(color, maxParticleRadius);
+    private void reloadTextureIfDirty(@NonNull final Scene scene) {
+        final boolean radiusRangeChanged = radiusRangeTracker.poll(scene);
+        if (textureDirty || radiusRangeChanged) {
+            generateAndLoadTexture(scene.getParticleRadiusMax());
         }
     }
 
-    private void generateAndLoadTexture(
-            @ColorInt final int color,
-            final float maxParticleRadius) {
-        final Bitmap texture = generateParticleTexture(color, maxParticleRadius);
-        loadTexture(texture);
+    /**
+     * Acquires the texture for the radius from the resource cache, generating it only if no
+     * renderer sharing the cache has generated it yet. The texture is an alpha mask that depends
+     * on the power of two size only, so it is shared regardless of color.
+     */
+    private void generateAndLoadTexture(final float maxParticleRadius) {
+        final int size = PotCalculator.findNextOrReturnIfPowerOfTwo((int) (maxParticleRadius * 2f));
+        final String key = TEXTURE_KEY_PREFIX + size;
+        if (textureId == 0 || !key.equals(textureKey)) {
+            releaseTexture();
+            int texture = resourceCache.acquireTexture(key);
+            if (texture == 0) {
+                final int created = createTexture(size);
+                texture = resourceCache.putTexture(key, created);
+                if (texture != created) {
+                    // Created concurrently in another context of the share group
+                    stateTracker.onTextureDeleted(created);
+                }
+            }
+            textureId = texture;
+            textureKey = key;
+        }
+        textureDirty = false;
+    }
+
+    private int createTexture(final int size) {
+        final int[] handle = new int[1];
+        GLES20.glGenTextures(1, handle, 0);
+        final Bitmap texture = generateParticleTexture(size);
+        loadTexture(handle[0], texture);
         texture.recycle();
+        return handle[0];
     }
 
+    /**
+     * Generates a circle alpha mask. The color is applied in the fragment shader.
+     */
     @NonNull
-    private Bitmap generateParticleTexture(
-            @ColorInt final int color,
-            final float maxPointRadius) {
+    private static Bitmap generateParticleTexture(final int sizePowerOfTwo) {
         final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        paint.setColor(color);
+        paint.setColor(Color.WHITE);
 
-        final int size = (int) (maxPointRadius * 2f);
-        final int sizePowerOfTwo = PotCalculator.findNextOrReturnIfPowerOfTwo(size);
         final int halfSizePowerOfTwo = sizePowerOfTwo / 2;
-        final Bitmap bitmap = Bitmap.createBitmap(sizePowerOfTwo, sizePowerOfTwo, Bitmap.Config.ARGB_4444);
+        final Bitmap bitmap = Bitmap.createBitmap(sizePowerOfTwo, sizePowerOfTwo, Bitmap.Config.ALPHA_8);
         final Canvas canvas = new Canvas(bitmap);
         canvas.drawCircle(halfSizePowerOfTwo, halfSizePowerOfTwo, halfSizePowerOfTwo, paint);
 
         return bitmap;
     }
 
-    private void loadTexture(@NonNull final Bitmap texture) {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+    private void loadTexture(final int textureId, @NonNull final Bitmap texture) {
+        stateTracker.bindTexture(textureId);
+        // Alpha mask rows are not 4-byte aligned for small sizes
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
         GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, texture, 0);
         GLErrorChecker.checkGlError("particles texImage2D");
 
@@ -183,20 +425,173 @@ final class GlSceneRendererParticles {
 
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-
-        textureDirty = false;
     }
 
     void drawScene(
             @NonNull final Scene scene,
             @NonNull final float[] matrix) {
-        initBuffers(scene.getDensity());
-        reloadTextureIfDirty(scene.getParticleColor(), scene.getParticleRadiusMax());
-        resolveParticleTriangles(scene);
-        drawParticles(scene.getDensity(), matrix);
+        final boolean textureless = this.textureless;
+        if (!textureless) {
+            reloadTextureIfDirty(scene);
+        }
+        if (analyticMotion) {
+            uploadSpawnedParticles(scene);
+            drawParticlesAnalytically(scene, textureless, matrix);
+        } else {
+            initBuffers(scene.getDensity());
+            viewportCuller.update(scene, foregroundTranslationX);
+            final int visibleCount = resolveParticleTriangles(scene, textureless);
+            drawParticles(visibleCount, textureless, resolveColor(scene), matrix);
+        }
+    }
+
+    private void uploadSpawnedParticles(@NonNull final Scene scene) {
+        final int count = scene.getDensity();
+        if (analyticVertexBuffer[0] == 0) {
+            GLES20.glGenBuffers(1, analyticVertexBuffer, 0);
+        }
+        stateTracker.bindArrayBuffer(analyticVertexBuffer[0]);
+
+        if (analyticVertexBufferParticles != count) {
+            // Reallocate and upload all particles at once
+            final int capacity = count * ANALYTIC_FLOATS_PER_PARTICLE;
+            if (analyticVertexData == null || analyticVertexData.capacity() < capacity) {
+                analyticVertexData = ByteBuffer
+                        .allocateDirect(capacity * BYTES_PER_FLOAT)
+                        .order(ByteOrder.nativeOrder())
+                        .asFloatBuffer();
+            }
+            if (uploadedSpawnGenerations == null || uploadedSpawnGenerations.length != count) {
+                uploadedSpawnGenerations = new int[count];
+            }
+
+            analyticVertexData.clear();
+            for (int i = 0; i < count; i++) {
+                putAnalyticParticle(scene, i);
+                uploadedSpawnGenerations[i] = scene.getParticleSpawnGeneration(i);
+            }
+            analyticVertexData.position(0);
+
+            GLES20.glBufferData(
+                    GLES20.GL_ARRAY_BUFFER,
+                    capacity * BYTES_PER_FLOAT,
+                    analyticVertexData,
+                    GLES20.GL_DYNAMIC_DRAW);
+            GLErrorChecker.checkGlError("particles glBufferData");
+
+            analyticVertexBufferParticles = count;
+        } else {
+            // Update only the slots of particles that were respawned since the last upload
+            for (int i = 0; i < count; i++) {
+                final int generation = scene.getParticleSpawnGeneration(i);
+                if (uploadedSpawnGenerations[i] != generation) {
+                    uploadedSpawnGenerations[i] = generation;
+
+                    analyticVertexData.clear();
+                    putAnalyticParticle(scene, i);
+                    analyticVertexData.position(0);
+
+                    GLES20.glBufferSubData(
+                            GLES20.GL_ARRAY_BUFFER,
+                            i * ANALYTIC_FLOATS_PER_PARTICLE * BYTES_PER_FLOAT,
+                            ANALYTIC_FLOATS_PER_PARTICLE * BYTES_PER_FLOAT,
+                            analyticVertexData);
+                }
+            }
+            GLErrorChecker.checkGlError("particles glBufferSubData");
+        }
+    }
+
+    private void putAnalyticParticle(@NonNull final Scene scene, final int position) {
+        final float originX = scene.getParticleOriginX(position);
+        final float originY = scene.getParticleOriginY(position);
+        final float speedFactor = scene.getParticleSpeedFactor(position);
+        final float velocityX = speedFactor * scene.getParticleDirectionCos(position);
+        final float velocityY = speedFactor * scene.getParticleDirectionSin(position);
+        final float spawnTime = scene.getParticleSpawnTime(position);
+        final float radius = scene.getRadiuses().get(position);
+
+        for (int v = 0; v < VERTICES_PER_PARTICLE; v++) {
+            analyticVertexData.put(originX);
+            analyticVertexData.put(originY);
+            analyticVertexData.put(velocityX);
+            analyticVertexData.put(velocityY);
+            analyticVertexData.put(spawnTime);
+            analyticVertexData.put(CORNERS[v * 2]);
+            analyticVertexData.put(CORNERS[v * 2 + 1]);
+            analyticVertexData.put(radius);
+        }
+    }
+
+    private void drawParticlesAnalytically(
+            @NonNull final Scene scene,
+            final boolean textureless,
+            @NonNull final float[] matrix) {
+        final GlProgram program;
+        if (textureless) {
+            if (analyticTexturelessProgram == null) {
+                analyticTexturelessProgram = createProgram(
+                        VERTEX_SHADER_CODE_ANALYTIC, FRAGMENT_SHADER_CODE_TEXTURELESS);
+            }
+            program = analyticTexturelessProgram;
+        } else {
+            if (analyticProgram == null) {
+                analyticProgram = createProgram(VERTEX_SHADER_CODE_ANALYTIC, FRAGMENT_SHADER_CODE);
+            }
+            program = analyticProgram;
+        }
+
+        stateTracker.useProgram(program);
+        GLErrorChecker.checkGlError("particles glUseProgram");
+
+        // Vertex buffer is bound in uploadSpawnedParticles()
+        putAnalyticAttributePointer(program, ATTRIBUTE_ORIGIN, 2, 0);
+        putAnalyticAttributePointer(program, ATTRIBUTE_VELOCITY, 2, 2);
+        putAnalyticAttributePointer(program, ATTRIBUTE_SPAWN_TIME, 1, 4);
+        putAnalyticAttributePointer(program, ATTRIBUTE_CORNER, 2, 5);
+        putAnalyticAttributePointer(program, ATTRIBUTE_RADIUS, 1, 7);
+
+        applyColor(program, resolveColor(scene));
+
+        GLES20.glUniform1f(
+                program.getUniformLocation(UNIFORM_TIME), scene.getMotionTime());
+
+        GLES20.glUniform1f(
+                program.getUniformLocation(UNIFORM_PADDING),
+                textureless ? TEXTURELESS_PADDING : 0f);
+
+        GLES20.glUniformMatrix4fv(
+                program.getUniformLocation(UNIFORM_MVP_MATRIX), 1, false, matrix, 0);
+
+        if (!textureless) {
+            stateTracker.bindTexture(textureId);
+        }
+
+        GLES20.glDrawArrays(
+                GLES20.GL_TRIANGLES, 0, analyticVertexBufferParticles * VERTICES_PER_PARTICLE);
+        GLErrorChecker.checkGlError("particles glDrawArrays");
     }
 
-    private void resolveParticleTriangles(@NonNull final Scene scene) {
+    private static void putAnalyticAttributePointer(
+            @NonNull final GlProgram program,
+            final int attribute,
+            final int size,
+            final int offsetInFloats) {
+        GLES20.glVertexAttribPointer(
+                program.getAttributeLocation(attribute),
+                size,
+                GLES20.GL_FLOAT,
+                false,
+                ANALYTIC_STRIDE,
+                offsetInFloats * BYTES_PER_FLOAT);
+    }
+
+    /**
+     * @return the number of visible particles resolved
+     */
+    private int resolveParticleTriangles(
+            @NonNull final Scene scene,
+            final boolean textureless) {
         final FloatBuffer coordinates = scene.getCoordinates();
         coordinates.position(0);
 
@@ -204,15 +599,35 @@ final class GlSceneRendererParticles {
         radiuses.position(0);
 
         particlesTrianglesCoordinates.clear();
+        if (textureless) {
+            particlesRadiuses.clear();
+        }
+
+        final float padding = textureless ? TEXTURELESS_PADDING : 0f;
 
+        int visibleCount = 0;
         final int count = scene.getDensity();
         for (int i = 0; i < count; i++) {
             final float particleRadius = radiuses.get();
+            final float halfSize = particleRadius + padding;
 
-            final float coordX = coordinates.get() - particleRadius;
-            final float coordY = coordinates.get() - particleRadius;
+            final float x = coordinates.get();
+            final float y = coordinates.get();
+            if (!viewportCuller.isCircleVisible(x, y, halfSize)) {
+                continue;
+            }
+            visibleCount++;
+
+            final float coordX = x - halfSize;
+            final float coordY = y - halfSize;
 
-            final float particleSize = particleRadius * 2f;
+            final float particleSize = halfSize * 2f;
+
+            if (textureless) {
+                for (int v = 0; v < VERTICES_PER_PARTICLE; v++) {
+                    particlesRadiuses.put(particleRadius);
+                }
+            }
 
             particlesTrianglesCoordinates.put(coordX);
             particlesTrianglesCoordinates.put(coordY);
@@ -228,44 +643,82 @@ final class GlSceneRendererParticles {
             particlesTrianglesCoordinates.put(coordX + particleSize);
             particlesTrianglesCoordinates.put(coordY + particleSize);
         }
+        return visibleCount;
+    }
+
+    @ColorInt
+    private static int resolveColor(@NonNull final Scene scene) {
+        return ParticleColorResolver.resolveParticleColorWithSceneAlpha(
+                scene.getParticleColor(), scene.getAlpha());
     }
 
-    private void drawParticles(final int count, @NonNull final float[] matrix) {
+    private static void applyColor(@NonNull final GlProgram program, @ColorInt final int color) {
+        final float alpha = Color.alpha(color) / 255f;
+        GLES20.glUniform4f(
+                program.getUniformLocation(UNIFORM_COLOR),
+                Color.red(color) / 255f * alpha,
+                Color.green(color) / 255f * alpha,
+                Color.blue(color) / 255f * alpha,
+                alpha);
+    }
+
+    private void drawParticles(
+            final int count,
+            final boolean textureless,
+            @ColorInt final int color,
+            @NonNull final float[] matrix) {
         particlesTexturesCoordinates.position(0);
         particlesTrianglesCoordinates.position(0);
 
-        GLES20.glUseProgram(program);
-        GLErrorChecker.checkGlError("particles glUseProgram");
+        final GlProgram program;
+        if (textureless) {
+            if (texturelessProgram == null) {
+                texturelessProgram = createProgram(
+                        VERTEX_SHADER_CODE_TEXTURELESS, FRAGMENT_SHADER_CODE_TEXTURELESS);
+            }
+            program = texturelessProgram;
+        } else {
+            program = this.program;
+        }
 
-        final int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
-        GLES20.glEnableVertexAttribArray(positionHandle);
+        stateTracker.useProgram(program);
+        stateTracker.bindArrayBuffer(0);
+        GLErrorChecker.checkGlError("particles glUseProgram");
 
         GLES20.glVertexAttribPointer(
-                positionHandle,
+                program.getAttributeLocation(ATTRIBUTE_POSITION),
                 COORDINATES_PER_VERTEX,
                 GLES20.GL_FLOAT,
                 false,
                 0,
                 particlesTrianglesCoordinates);
 
-        final int texCoordHandle = GLES20.glGetAttribLocation(program, "aTexCoord");
-        GLES20.glEnableVertexAttribArray(texCoordHandle);
-
         GLES20.glVertexAttribPointer(
-                texCoordHandle,
+                program.getAttributeLocation(ATTRIBUTE_TEX_COORD),
                 COORDINATES_PER_VERTEX,
                 GLES20.GL_BYTE,
                 false,
                 0,
                 particlesTexturesCoordinates);
 
-        final int samplerLoc = GLES20.glGetUniformLocation(program, "sTexture");
-        GLES20.glUniform1i(samplerLoc, 0);
+        if (textureless) {
+            particlesRadiuses.position(0);
+            GLES20.glVertexAttribPointer(
+                    program.getAttributeLocation(ATTRIBUTE_RADIUS),
+                    1,
+                    GLES20.GL_FLOAT,
+                    false,
+                    0,
+                    particlesRadiuses);
+        } else {
+            stateTracker.bindTexture(textureId);
+        }
+
+        applyColor(program, color);
 
-        final int mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, matrix, 0);
+        GLES20.glUniformMatrix4fv(
+                program.getUniformLocation(UNIFORM_MVP_MATRIX), 1, false, matrix, 0);
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, count * VERTICES_PER_PARTICLE);
         GLErrorChecker.checkGlError("particles glDrawArrays");
     }
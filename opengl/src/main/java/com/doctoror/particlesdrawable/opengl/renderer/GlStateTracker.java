@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Tracks GL state of the current context to skip redundant state changes. All state changes that
+ * are tracked here must go through this class.
+ */
+final class GlStateTracker {
+
+    private int program;
+    private int texture;
+    private int arrayBuffer;
+    private int elementArrayBuffer;
+    private int enabledAttributes;
+    private boolean blendEnabled;
+
+    /**
+     * Resets to the initial state of a newly created context.
+     */
+    void reset() {
+        program = 0;
+        texture = 0;
+        arrayBuffer = 0;
+        elementArrayBuffer = 0;
+        enabledAttributes = 0;
+        blendEnabled = false;
+    }
+
+    /**
+     * Forgets the tracked bindings, so that they are set again on next use. Used when the context
+     * is shared with other renderers that may have changed them. Enabled vertex attribute arrays
+     * are still tracked, as every renderer of a shared context disables them with
+     * {@link #disableVertexAttribArrays()} after drawing.
+     */
+    void invalidate() {
+        program = -1;
+        texture = -1;
+        arrayBuffer = -1;
+        elementArrayBuffer = -1;
+        enabledAttributes = 0;
+        blendEnabled = false;
+    }
+
+    void disableVertexAttribArrays() {
+        setEnabledVertexAttribArrays(0);
+    }
+
+    /**
+     * Uses the program and enables vertex attribute arrays for all it's active attributes,
+     * disabling the rest.
+     */
+    void useProgram(@NonNull final GlProgram program) {
+        final int handle = program.getHandle();
+        if (this.program != handle) {
+            GLES20.glUseProgram(handle);
+            this.program = handle;
+        }
+        setEnabledVertexAttribArrays(program.getAttributeMask());
+    }
+
+    private void setEnabledVertexAttribArrays(final int mask) {
+        final int changed = enabledAttributes ^ mask;
+        if (changed != 0) {
+            for (int location = 0; location < Integer.SIZE; location++) {
+                final int bit = 1 << location;
+                if ((changed & bit) != 0) {
+                    if ((mask & bit) != 0) {
+                        GLES20.glEnableVertexAttribArray(location);
+                    } else {
+                        GLES20.glDisableVertexAttribArray(location);
+                    }
+                }
+            }
+            enabledAttributes = mask;
+        }
+    }
+
+    void bindTexture(final int texture) {
+        if (this.texture != texture) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+            this.texture = texture;
+        }
+    }
+
+    void bindArrayBuffer(final int buffer) {
+        if (arrayBuffer != buffer) {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+            arrayBuffer = buffer;
+        }
+    }
+
+    void bindElementArrayBuffer(final int buffer) {
+        if (elementArrayBuffer != buffer) {
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+            elementArrayBuffer = buffer;
+        }
+    }
+
+    void setBlendEnabled(final boolean enabled) {
+        if (blendEnabled != enabled) {
+            if (enabled) {
+                GLES20.glEnable(GLES20.GL_BLEND);
+            } else {
+                GLES20.glDisable(GLES20.GL_BLEND);
+            }
+            blendEnabled = enabled;
+        }
+    }
+
+    /**
+     * Deleting a bound texture reverts the binding to 0.
+     */
+    void onTextureDeleted(final int texture) {
+        if (this.texture == texture) {
+            this.texture = 0;
+        }
+    }
+
+    /**
+     * Deleting a bound buffer reverts the binding to 0.
+     */
+    void onBufferDeleted(final int buffer) {
+        if (arrayBuffer == buffer) {
+            arrayBuffer = 0;
+        }
+        if (elementArrayBuffer == buffer) {
+            elementArrayBuffer = 0;
+        }
+    }
+
+    /**
+     * Deleting the program in use does not change the current program until another program is
+     * used, but the handle may be reused for a new program.
+     */
+    void onProgramDeleted(final int program) {
+        if (this.program == program) {
+            this.program = -1;
+        }
+    }
+}
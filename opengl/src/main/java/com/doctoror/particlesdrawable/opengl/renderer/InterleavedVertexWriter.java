@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+
+/**
+ * Writes interleaved vertices of 32-bit words into a scratch array and flushes them into the
+ * target buffer with a single bulk put per chunk, instead of a relative put per component.
+ * <p>
+ * When started with {@link #beginStaging()}, there is no target buffer and all words are kept
+ * in the scratch array, which grows as needed, until copied with {@link #copyStagedTo(IntBuffer)}.
+ * <p>
+ * Words are packed for the native byte order, so the target must be a native order view.
+ */
+final class InterleavedVertexWriter {
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private static final int SCRATCH_SIZE = 1536;
+
+    private int[] scratch = new int[SCRATCH_SIZE];
+    private int scratchCount;
+
+    private IntBuffer target;
+
+    /**
+     * Starts writing to the specified buffer from its current position.
+     */
+    void begin(@NonNull final IntBuffer target) {
+        this.target = target;
+        scratchCount = 0;
+    }
+
+    /**
+     * Starts writing to the scratch array only. The array is reused, so it starts with the
+     * capacity reached by previous staging.
+     */
+    void beginStaging() {
+        target = null;
+        scratchCount = 0;
+    }
+
+    int getStagedWordsCount() {
+        return scratchCount;
+    }
+
+    /**
+     * Copies all staged words to the specified buffer from its current position.
+     */
+    void copyStagedTo(@NonNull final IntBuffer destination) {
+        destination.put(scratch, 0, scratchCount);
+    }
+
+    void putVertex(final int packedPosition, final int packedColor) {
+        if (scratchCount + 2 > scratch.length) {
+            makeRoom();
+        }
+        final int[] scratch = this.scratch;
+        int i = scratchCount;
+        scratch[i++] = packedPosition;
+        scratch[i++] = packedColor;
+        scratchCount = i;
+    }
+
+    void putVertex(final int packedStart, final int packedEnd, final int packedColor) {
+        if (scratchCount + 3 > scratch.length) {
+            makeRoom();
+        }
+        final int[] scratch = this.scratch;
+        int i = scratchCount;
+        scratch[i++] = packedStart;
+        scratch[i++] = packedEnd;
+        scratch[i++] = packedColor;
+        scratchCount = i;
+    }
+
+    /**
+     * Writes all pending words to the target buffer. Does nothing when staging.
+     */
+    void flush() {
+        if (target != null && scratchCount != 0) {
+            target.put(scratch, 0, scratchCount);
+            scratchCount = 0;
+        }
+    }
+
+    private void makeRoom() {
+        if (target != null) {
+            flush();
+        } else {
+            final int[] grown = new int[scratch.length * 2];
+            System.arraycopy(scratch, 0, grown, 0, scratchCount);
+            scratch = grown;
+        }
+    }
+
+    /**
+     * Packs two shorts into a word that has x followed by y in memory.
+     */
+    static int packPosition(final short x, final short y) {
+        return LITTLE_ENDIAN
+                ? (x & 0xFFFF) | (y << 16)
+                : (x << 16) | (y & 0xFFFF);
+    }
+
+    /**
+     * Packs an ARGB color into a word that has R, G, B and A bytes in memory, as expected for
+     * normalized GL_UNSIGNED_BYTE color attributes.
+     */
+    static int packColor(@ColorInt final int color) {
+        return LITTLE_ENDIAN
+                ? (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16)
+                : (color << 8) | (color >>> 24);
+    }
+}
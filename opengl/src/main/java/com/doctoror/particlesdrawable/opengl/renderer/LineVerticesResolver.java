@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.util.DistanceResolver;
+import com.doctoror.particlesdrawable.util.LineColorTable;
+import com.doctoror.particlesdrawable.util.LineSelector;
+import com.doctoror.particlesdrawable.util.ViewportCuller;
+
+import java.nio.IntBuffer;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Resolves connection lines between particles into interleaved vertices. Instances are not thread
+ * safe, but separate instances may resolve disjoint particle ranges of the same scene concurrently.
+ */
+final class LineVerticesResolver {
+
+    static final int VERTICES_PER_THIN_LINE = 2;
+    static final int VERTICES_PER_THICK_LINE = 6;
+    static final int VERTICES_PER_INDEXED_THICK_LINE = 4;
+
+    /**
+     * Words per vertex of short x, y and RGBA8 color.
+     */
+    static final int WORDS_PER_VERTEX = 2;
+
+    /**
+     * Words per vertex of short start x, y, short end x, y and RGBA8 color.
+     */
+    static final int WORDS_PER_EXPANDED_VERTEX = 3;
+
+    private final InterleavedVertexWriter vertexWriter = new InterleavedVertexWriter();
+
+    private boolean lineAsTriangles;
+    private boolean lineAsIndexedQuads;
+    private boolean lineAsExpandedQuads;
+
+    private float positionScale = 1f;
+
+    private int verticesCount;
+
+    void configure(
+            final boolean lineAsTriangles,
+            final boolean lineAsIndexedQuads,
+            final boolean lineAsExpandedQuads,
+            final float positionScale) {
+        this.lineAsTriangles = lineAsTriangles;
+        this.lineAsIndexedQuads = lineAsIndexedQuads;
+        this.lineAsExpandedQuads = lineAsExpandedQuads;
+        this.positionScale = positionScale;
+    }
+
+    int getVerticesPerLine() {
+        if (lineAsIndexedQuads) {
+            return VERTICES_PER_INDEXED_THICK_LINE;
+        }
+        return lineAsTriangles ? VERTICES_PER_THICK_LINE : VERTICES_PER_THIN_LINE;
+    }
+
+    int getWordsPerVertex() {
+        return lineAsExpandedQuads ? WORDS_PER_EXPANDED_VERTEX : WORDS_PER_VERTEX;
+    }
+
+    int getVerticesCount() {
+        return verticesCount;
+    }
+
+    /**
+     * Starts writing vertices to the specified buffer.
+     */
+    void begin(@NonNull final IntBuffer target) {
+        vertexWriter.begin(target);
+        verticesCount = 0;
+    }
+
+    /**
+     * Starts writing vertices to the internal staging array, which keeps its size from the
+     * previous frame and grows as needed.
+     */
+    void beginStaging() {
+        vertexWriter.beginStaging();
+        verticesCount = 0;
+    }
+
+    int getStagedWordsCount() {
+        return vertexWriter.getStagedWordsCount();
+    }
+
+    void copyStagedTo(@NonNull final IntBuffer destination) {
+        vertexWriter.copyStagedTo(destination);
+    }
+
+    void finish() {
+        vertexWriter.flush();
+    }
+
+    /**
+     * Resolves lines from every particle in the specified range to all particles that follow it.
+     *
+     * @param scene          the scene
+     * @param lineColorTable the line colors, updated for the scene
+     * @param viewportCuller the culler, updated for the scene
+     * @param from           the first particle, inclusive
+     * @param to             the last particle, exclusive
+     */
+    void resolve(
+            @NonNull final Scene scene,
+            @NonNull final LineColorTable lineColorTable,
+            @NonNull final ViewportCuller viewportCuller,
+            final int from,
+            final int to) {
+        final int particlesCount = scene.getDensity();
+        final float maxDistanceSquared = lineColorTable.getMaxDistanceSquared();
+        final float lineThickness = scene.getLineThickness();
+        for (int i = from; i < to; i++) {
+
+            final float x1 = scene.getParticleX(i);
+            final float y1 = scene.getParticleY(i);
+
+            // Draw connection lines for eligible particles
+            for (int j = i + 1; j < particlesCount; j++) {
+
+                final float x2 = scene.getParticleX(j);
+                final float y2 = scene.getParticleY(j);
+
+                final float distanceSquared = DistanceResolver.distanceSquared(x1, y1, x2, y2);
+                if (distanceSquared < maxDistanceSquared
+                        && viewportCuller.isLineVisible(x1, y1, x2, y2, lineThickness)) {
+                    final int lineColor = lineColorTable.resolveLineColor(distanceSquared);
+
+                    resolveLine(
+                            x1,
+                            y1,
+                            x2,
+                            y2,
+                            lineColor,
+                            distanceSquared,
+                            lineThickness);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the lines selected by the selector.
+     *
+     * @param scene          the scene the lines were selected from
+     * @param lineColorTable the line colors, updated for the scene
+     * @param lineSelector   the selector, after selecting lines of the scene
+     */
+    void resolveSelected(
+            @NonNull final Scene scene,
+            @NonNull final LineColorTable lineColorTable,
+            @NonNull final LineSelector lineSelector) {
+        final float lineThickness = scene.getLineThickness();
+        final int linesCount = lineSelector.getSelectedCount();
+        for (int i = 0; i < linesCount; i++) {
+            final int start = lineSelector.getSelectedStart(i);
+            final int end = lineSelector.getSelectedEnd(i);
+            final float distanceSquared = lineSelector.getSelectedDistanceSquared(i);
+            resolveLine(
+                    scene.getParticleX(start),
+                    scene.getParticleY(start),
+                    scene.getParticleX(end),
+                    scene.getParticleY(end),
+                    lineColorTable.resolveLineColor(distanceSquared),
+                    distanceSquared,
+                    lineThickness);
+        }
+    }
+
+    private void resolveLine(
+            final float startX,
+            final float startY,
+            final float stopX,
+            final float stopY,
+            @ColorInt final int color,
+            final float lineLengthSquared,
+            final float lineThickness) {
+        if (lineAsExpandedQuads) {
+            resolveExpandedLine(startX, startY, stopX, stopY, color);
+        } else if (lineAsTriangles) {
+            final float lineLength = (float) Math.sqrt(lineLengthSquared);
+            resolveThickLine(startX, startY, stopX, stopY, color, lineLength, lineThickness);
+        } else {
+            resolveThinLine(startX, startY, stopX, stopY, color);
+        }
+    }
+
+    private void resolveThinLine(
+            final float startX,
+            final float startY,
+            final float stopX,
+            final float stopY,
+            @ColorInt final int color) {
+        final int packedColor = InterleavedVertexWriter.packColor(color);
+        vertexWriter.putVertex(packVertexPosition(startX, startY), packedColor);
+        vertexWriter.putVertex(packVertexPosition(stopX, stopY), packedColor);
+
+        verticesCount += VERTICES_PER_THIN_LINE;
+    }
+
+    /**
+     * Puts both endpoints to each of 4 quad vertices. The extrusion is done in the vertex shader.
+     */
+    private void resolveExpandedLine(
+            final float startX,
+            final float startY,
+            final float stopX,
+            final float stopY,
+            @ColorInt final int color) {
+        final int packedStart = packVertexPosition(startX, startY);
+        final int packedStop = packVertexPosition(stopX, stopY);
+        final int packedColor = InterleavedVertexWriter.packColor(color);
+
+        for (int i = 0; i < VERTICES_PER_INDEXED_THICK_LINE; i++) {
+            vertexWriter.putVertex(packedStart, packedStop, packedColor);
+        }
+
+        verticesCount += VERTICES_PER_INDEXED_THICK_LINE;
+    }
+
+    private void resolveThickLine(
+            final float startX,
+            final float startY,
+            final float stopX,
+            final float stopY,
+            @ColorInt final int color,
+            final float lineLength,
+            final float lineThickness) {
+        // Based on https://stackoverflow.com/a/1937202/1366471
+        final float dx = (stopX - startX) / lineLength; //delta x
+        final float dy = (stopY - startY) / lineLength; //delta y
+
+        //Ok, (dx, dy) is now a unit vector pointing in the direction of the line
+        //A perpendicular vector is given by (-dy, dx)
+        final float px = 0.5f * lineThickness * (-dy); //perpendicular vector with lenght thickness * 0.5
+        final float py = 0.5f * lineThickness * dx;
+
+        final float x1 = startX + px;
+        final float y1 = startY + py;
+
+        final float x2 = stopX + px;
+        final float y2 = stopY + py;
+
+        final float x3 = stopX - px;
+        final float y3 = stopY - py;
+
+        final float x4 = startX - px;
+        final float y4 = startY - py;
+
+        final int p1 = packVertexPosition(x1, y1);
+        final int p2 = packVertexPosition(x2, y2);
+        final int p3 = packVertexPosition(x3, y3);
+        final int p4 = packVertexPosition(x4, y4);
+        final int packedColor = InterleavedVertexWriter.packColor(color);
+
+        if (lineAsIndexedQuads) {
+            putLineQuad(p1, p2, p3, p4, packedColor);
+
+            verticesCount += VERTICES_PER_INDEXED_THICK_LINE;
+        } else {
+            putLineTrianglesBasedOnQuad(p1, p2, p3, p4, packedColor);
+
+            verticesCount += VERTICES_PER_THICK_LINE;
+        }
+    }
+
+    private void putLineTrianglesBasedOnQuad(
+            final int p1,
+            final int p2,
+            final int p3,
+            final int p4,
+            final int packedColor
+    ) {
+        vertexWriter.putVertex(p1, packedColor);
+        vertexWriter.putVertex(p2, packedColor);
+        vertexWriter.putVertex(p4, packedColor);
+
+        vertexWriter.putVertex(p2, packedColor);
+        vertexWriter.putVertex(p3, packedColor);
+        vertexWriter.putVertex(p4, packedColor);
+    }
+
+    /**
+     * Puts quad vertices in order for indices of the static index buffer of
+     * {@link GlSceneRendererLines}, triangles (0, 1, 3) and (1, 2, 3).
+     */
+    private void putLineQuad(
+            final int p1,
+            final int p2,
+            final int p3,
+            final int p4,
+            final int packedColor
+    ) {
+        vertexWriter.putVertex(p1, packedColor);
+        vertexWriter.putVertex(p2, packedColor);
+        vertexWriter.putVertex(p3, packedColor);
+        vertexWriter.putVertex(p4, packedColor);
+    }
+
+    private int packVertexPosition(final float x, final float y) {
+        return InterleavedVertexWriter.packPosition(
+                packPosition(x, positionScale),
+                packPosition(y, positionScale));
+    }
+
+    @VisibleForTesting
+    static short packPosition(final float value, final float positionScale) {
+        final float scaled = value * positionScale;
+        if (scaled >= Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (scaled <= Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(scaled);
+    }
+}
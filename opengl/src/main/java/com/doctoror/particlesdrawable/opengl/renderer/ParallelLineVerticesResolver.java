@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer;
+
+import com.doctoror.particlesdrawable.model.Scene;
+import com.doctoror.particlesdrawable.util.LineColorTable;
+import com.doctoror.particlesdrawable.util.ViewportCuller;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Resolves line vertices on worker threads. Every worker handles a slice of the outer particle
+ * loop with a similar number of particle pairs and writes to its own staging array. After the
+ * word counts are known, the workers copy their staged words to contiguous regions of the target
+ * buffer, so the result is identical to resolving all particles sequentially.
+ */
+final class ParallelLineVerticesResolver {
+
+    private static final int MAX_WORKERS = 4;
+
+    private final int workersCount;
+
+    private final LineVerticesResolver[] resolvers;
+
+    /**
+     * Start particle of every slice, followed by particles count.
+     */
+    private final int[] sliceStarts;
+
+    private final int[] wordOffsets;
+
+    private final List<Callable<Void>> resolveTasks;
+    private final List<Callable<Void>> copyTasks;
+
+    private ExecutorService executor;
+
+    private Scene scene;
+    private LineColorTable lineColorTable;
+    private ViewportCuller viewportCuller;
+    private IntBuffer target;
+
+    ParallelLineVerticesResolver(final int workersCount) {
+        if (workersCount < 1) {
+            throw new IllegalArgumentException("workersCount must be positive");
+        }
+        this.workersCount = workersCount;
+        resolvers = new LineVerticesResolver[workersCount];
+        sliceStarts = new int[workersCount + 1];
+        wordOffsets = new int[workersCount];
+        resolveTasks = new ArrayList<>(workersCount);
+        copyTasks = new ArrayList<>(workersCount);
+        for (int i = 0; i < workersCount; i++) {
+            resolvers[i] = new LineVerticesResolver();
+            resolveTasks.add(new ResolveTask(i));
+            copyTasks.add(new CopyTask(i));
+        }
+    }
+
+    /**
+     * @return the number of workers worth using on this device, 1 meaning no parallelism
+     */
+    static int resolveWorkersCount() {
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_WORKERS));
+    }
+
+    /**
+     * Resolves lines of the scene into the target buffer starting at its current position.
+     *
+     * @return the number of vertices written
+     */
+    int resolve(
+            @NonNull final Scene scene,
+            @NonNull final LineColorTable lineColorTable,
+            @NonNull final ViewportCuller viewportCuller,
+            @NonNull final IntBuffer target,
+            final boolean lineAsTriangles,
+            final boolean lineAsIndexedQuads,
+            final boolean lineAsExpandedQuads,
+            final float positionScale) {
+        final int particlesCount = scene.getDensity();
+        resolveSlices(particlesCount, sliceStarts);
+
+        for (int i = 0; i < workersCount; i++) {
+            final LineVerticesResolver resolver = resolvers[i];
+            resolver.configure(
+                    lineAsTriangles,
+                    lineAsIndexedQuads,
+                    lineAsExpandedQuads,
+                    positionScale);
+            resolver.beginStaging();
+        }
+
+        this.scene = scene;
+        this.lineColorTable = lineColorTable;
+        this.viewportCuller = viewportCuller;
+        this.target = target;
+        try {
+            invokeAll(resolveTasks);
+
+            // Prefix sum of staged words
+            int offset = target.position();
+            int verticesCount = 0;
+            for (int i = 0; i < workersCount; i++) {
+                wordOffsets[i] = offset;
+                offset += resolvers[i].getStagedWordsCount();
+                verticesCount += resolvers[i].getVerticesCount();
+            }
+
+            invokeAll(copyTasks);
+            target.position(offset);
+            return verticesCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            this.scene = null;
+            this.lineColorTable = null;
+            this.viewportCuller = null;
+            this.target = null;
+        }
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void invokeAll(@NonNull final List<Callable<Void>> tasks) throws InterruptedException {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(workersCount, new WorkerThreadFactory());
+        }
+        for (final Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Splits the outer particle loop into slices with a similar number of particle pairs. The
+     * first particles have more pairs, so their slices are shorter.
+     *
+     * @param particlesCount the number of particles
+     * @param sliceStarts    the output array, receives start particle of every slice, followed by
+     *                       particles count
+     */
+    @VisibleForTesting
+    static void resolveSlices(final int particlesCount, @NonNull final int[] sliceStarts) {
+        final int slicesCount = sliceStarts.length - 1;
+        final long totalPairs = (long) particlesCount * (particlesCount - 1) / 2;
+
+        int slice = 1;
+        long pairs = 0;
+        sliceStarts[0] = 0;
+        for (int i = 0; i < particlesCount && slice < slicesCount; i++) {
+            while (slice < slicesCount
+                    && pairs >= (totalPairs * slice + slicesCount - 1) / slicesCount) {
+                sliceStarts[slice++] = i;
+            }
+            pairs += particlesCount - 1 - i;
+        }
+        while (slice <= slicesCount) {
+            sliceStarts[slice++] = particlesCount;
+        }
+    }
+
+    private final class ResolveTask implements Callable<Void> {
+
+        private final int index;
+
+        ResolveTask(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Void call() {
+            final LineVerticesResolver resolver = resolvers[index];
+            resolver.resolve(
+                    scene,
+                    lineColorTable,
+                    viewportCuller,
+                    sliceStarts[index],
+                    sliceStarts[index + 1]);
+            resolver.finish();
+            return null;
+        }
+    }
+
+    private final class CopyTask implements Callable<Void> {
+
+        private final int index;
+
+        CopyTask(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Void call() {
+            final IntBuffer region = target.duplicate();
+            region.position(wordOffsets[index]);
+            resolvers[index].copyStagedTo(region);
+            return null;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private int count;
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            final Thread thread = new Thread(r, "ParticlesLines-" + count++);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
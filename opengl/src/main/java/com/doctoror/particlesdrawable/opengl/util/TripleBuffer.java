@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Lock-free handoff of items from a single producer thread to a single consumer thread. The
+ * producer fills the write item and publishes it, and the consumer acquires the most recently
+ * published item. Neither side ever waits for the other, and the item held by one side is never
+ * touched by the other.
+ *
+ * @param <T> the item type
+ */
+public final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FLAG_FRESH = 4;
+
+    private final Object[] items;
+
+    /**
+     * Index of the item between producer and consumer, with {@link #FLAG_FRESH} set if it was
+     * published after the last acquire.
+     */
+    private final AtomicInteger middle = new AtomicInteger(2);
+
+    private int writeIndex = 0;
+    private int readIndex = 1;
+
+    private boolean hasRead;
+
+    public TripleBuffer(@NonNull final T first, @NonNull final T second, @NonNull final T third) {
+        items = new Object[]{first, second, third};
+    }
+
+    /**
+     * Must be called by the producer only.
+     *
+     * @return the item to fill before calling {@link #publish()}
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public T getWriteItem() {
+        return (T) items[writeIndex];
+    }
+
+    /**
+     * Makes the write item available to the consumer and switches the producer to a free item.
+     * Must be called by the producer only.
+     */
+    public void publish() {
+        writeIndex = middle.getAndSet(writeIndex | FLAG_FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Must be called by the consumer only.
+     *
+     * @return the most recently published item, which may be the same as on the previous call if
+     * nothing was published since, or null if nothing was ever published
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T acquireReadItem() {
+        if ((middle.get() & FLAG_FRESH) != 0) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+            hasRead = true;
+        }
+        return hasRead ? (T) items[readIndex] : null;
+    }
+
+    /**
+     * Must be called by the consumer only.
+     *
+     * @return true if an item was published since the last {@link #acquireReadItem()}
+     */
+    public boolean hasFreshItem() {
+        return (middle.get() & FLAG_FRESH) != 0;
+    }
+}
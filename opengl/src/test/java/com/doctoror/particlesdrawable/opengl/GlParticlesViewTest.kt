@@ -31,6 +31,7 @@ import com.doctoror.particlesdrawable.engine.SceneConfigurator
 import com.doctoror.particlesdrawable.model.Scene
 import com.doctoror.particlesdrawable.opengl.renderer.GlSceneRenderer
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
 import org.junit.Assert.assertTrue
 import org.junit.Ignore
 import org.junit.Test
@@ -41,7 +42,10 @@ import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.eq
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.spy
+import org.mockito.kotlin.times
+import org.mockito.kotlin.timeout
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 import org.robolectric.RobolectricTestRunner
@@ -240,6 +244,26 @@ class GlParticlesViewTest {
         underTest.unscheduleNextFrame()
     }
 
+    @Test
+    fun requestsDelayedRenderOnScheduleNextFrameWhenTimingOnRenderThread() {
+        val delay = 36000L
+        underTest.setFrameTimingOnRenderThread(true)
+
+        underTest.scheduleNextFrame(delay)
+
+        verify(underTest).requestRenderDelayed(delay)
+        verify(underTest, never()).postDelayed(any(), eq(delay))
+    }
+
+    @Test
+    fun cancelsDelayedRenderOnUnscheduleNextFrameWhenTimingOnRenderThread() {
+        underTest.setFrameTimingOnRenderThread(true)
+
+        underTest.unscheduleNextFrame()
+
+        verify(underTest).cancelDelayedRender()
+    }
+
     @Test
     fun resumesAndStartsEngineOnStart() {
         underTest.start()
@@ -260,6 +284,60 @@ class GlParticlesViewTest {
         verify(renderer).recycle()
     }
 
+    @Test
+    fun stopsEngineAndPausesWithoutBlockingOnStopAsync() {
+        val listener: OnPauseFixAttemptGLSurfaceView.OnPauseCompleteListener = mock()
+
+        underTest.stopAsync(100L, listener)
+
+        verify(engine).stop()
+        verify(underTest).onPauseAsync(100L, listener)
+        verify(underTest, never()).onPause()
+    }
+
+    @Test
+    fun recyclesRendererOnStopAsync() {
+        underTest.stopAsync(100L, null)
+        verify(renderer).recycle()
+    }
+
+    @Test
+    fun doesNotRecycleRendererOnStopWhenRetainingGlContext() {
+        underTest.setRetainGlContext(true)
+        underTest.stop()
+        verify(renderer, never()).recycle()
+    }
+
+    @Test
+    fun preservesEglContextAndKeepsThreadOnDetachWhenRetainingGlContext() {
+        underTest.setRetainGlContext(true)
+
+        assertTrue(underTest.preserveEGLContextOnPause)
+        assertTrue(underTest.detachGracePeriod > 0)
+    }
+
+    @Test
+    fun keepsThreadForSpecifiedGracePeriodWhenRetainingGlContext() {
+        underTest.setRetainGlContext(true, 1500L)
+
+        assertTrue(underTest.preserveEGLContextOnPause)
+        assertEquals(1500L, underTest.detachGracePeriod)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsOnNegativeDetachGracePeriod() {
+        underTest.setRetainGlContext(true, -1L)
+    }
+
+    @Test
+    fun releasesEglContextAndThreadWhenNotRetainingGlContext() {
+        underTest.setRetainGlContext(true)
+        underTest.setRetainGlContext(false)
+
+        assertFalse(underTest.preserveEGLContextOnPause)
+        assertEquals(0L, underTest.detachGracePeriod)
+    }
+
     @Test
     fun recyclesAndSetsUpRendererOnSurfaceCreated() {
         underTest.onSurfaceCreated(mock(), mock())
@@ -293,6 +371,92 @@ class GlParticlesViewTest {
         verify(engine).makeFreshFrameWithParticlesOffscreen()
     }
 
+    @Test
+    fun forwardsSetAnalyticParticleMotionToEngineAndRenderer() {
+        underTest.setAnalyticParticleMotion(true)
+
+        verify(engine).isAnalyticMotion = true
+        verify(renderer).setAnalyticParticleMotion(true)
+    }
+
+    @Test
+    fun forwardsSetDensityScalingToEngine() {
+        underTest.setDensityScaling(0.01f, 10, 100)
+        verify(engine).setDensityScaling(eq(0.01f), any(), eq(10), eq(100))
+    }
+
+    @Test
+    fun forwardsSetParticleReorderIntervalToEngine() {
+        underTest.setParticleReorderInterval(30)
+        verify(engine).particleReorderInterval = 30
+    }
+
+    @Test
+    fun forwardsSetTexturelessParticlesToRenderer() {
+        underTest.setTexturelessParticles(true)
+        verify(renderer).setTexturelessParticles(true)
+    }
+
+    @Test
+    fun forwardsSetIndexedThickLinesToRenderer() {
+        underTest.setIndexedThickLines(true)
+        verify(renderer).setIndexedThickLines(true)
+    }
+
+    @Test
+    fun forwardsSetShaderExpandedThickLinesToRenderer() {
+        underTest.setShaderExpandedThickLines(true)
+        verify(renderer).setShaderExpandedThickLines(true)
+    }
+
+    @Test
+    fun forwardsSetAntialiasedLinesToRenderer() {
+        underTest.setAntialiasedLines(true)
+        verify(renderer).setAntialiasedLines(true)
+    }
+
+    @Test
+    fun forwardsSetParallelLineGenerationToRenderer() {
+        underTest.setParallelLineGeneration(true)
+        verify(renderer).setParallelLineGeneration(true)
+    }
+
+    @Test
+    fun forwardsSetLineBudgetToRenderer() {
+        underTest.setLineBudget(100, 3)
+        verify(renderer).setLineBudget(100, 3)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsWhenLineBudgetIsNegative() {
+        underTest.setLineBudget(-1, 3)
+    }
+
+    @Test
+    fun drawsDirectlyAndPreparesNextFrameWhenPipelinedAndNothingPrepared() {
+        whenever(engine.isRunning).thenReturn(true)
+        underTest.setPipelinedFrames(true)
+
+        underTest.onDrawFrame(mock())
+
+        verify(engine).draw()
+        verify(engine, never()).run()
+        verify(engine, timeout(1000)).nextFrame()
+        verify(renderer, timeout(1000)).prepareFrame(eq(scene), any())
+    }
+
+    @Test
+    fun drawsAndRunsAfterPipelinedFramesDisabled() {
+        underTest.setPipelinedFrames(true)
+        underTest.setPipelinedFrames(false)
+
+        underTest.onDrawFrame(mock())
+
+        val inorder = inOrder(engine)
+        inorder.verify(engine).draw()
+        inorder.verify(engine).run()
+    }
+
     @Test
     fun forwardsSetDensityToScene() {
         val value = 1
@@ -328,6 +492,14 @@ class GlParticlesViewTest {
         verify(scene).particleColor = value
     }
 
+    @Test
+    fun doesNotMarkParticleTextureDirtyOnSetParticleColor() {
+        underTest.particleColor = 5
+
+        // Only the initial invocation from init
+        verify(renderer, times(1)).markParticleTextureDirty()
+    }
+
     @Test
     fun returnsParticleColorFromScene() {
         val value = 6
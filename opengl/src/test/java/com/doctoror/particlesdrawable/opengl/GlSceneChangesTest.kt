@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl
+
+import com.doctoror.particlesdrawable.model.Scene
+import com.doctoror.particlesdrawable.model.SceneSpec
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.inOrder
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyNoInteractions
+
+class GlSceneChangesTest {
+
+    private val scene: Scene = mock()
+
+    private val underTest = GlSceneChanges(scene, Any())
+
+    @Test
+    fun requestsQueueingOnlyForFirstPendingChange() {
+        assertTrue(underTest.setDensity(1))
+        assertFalse(underTest.setDensity(2))
+        assertFalse(underTest.setLineColor(3))
+    }
+
+    @Test
+    fun requestsQueueingAgainAfterApplied() {
+        underTest.setDensity(1)
+        underTest.run()
+
+        assertTrue(underTest.setDensity(2))
+    }
+
+    @Test
+    fun appliesOnlyLatestValueOfProperty() {
+        underTest.setDensity(1)
+        underTest.setDensity(2)
+
+        underTest.run()
+
+        verify(scene, never()).density = 1
+        verify(scene).density = 2
+    }
+
+    @Test
+    fun appliesOnlyChangedProperties() {
+        underTest.setLineColor(3)
+
+        underTest.run()
+
+        verify(scene).lineColor = 3
+        verify(scene, never()).density = any()
+        verify(scene, never()).particleColor = any()
+        verify(scene, never()).setParticleRadiusRange(any(), any())
+    }
+
+    @Test
+    fun appliesAllChangedProperties() {
+        underTest.setFrameDelay(1)
+        underTest.setSpeedFactor(2f)
+        underTest.setLineThickness(3f)
+        underTest.setLineLength(4f)
+        underTest.setDensity(5)
+        underTest.setParticleColor(6)
+        underTest.setLineColor(7)
+
+        underTest.run()
+
+        verify(scene).frameDelay = 1
+        verify(scene).speedFactor = 2f
+        verify(scene).lineThickness = 3f
+        verify(scene).lineLength = 4f
+        verify(scene).density = 5
+        verify(scene).particleColor = 6
+        verify(scene).lineColor = 7
+    }
+
+    @Test
+    fun appliesParticleRadiusRange() {
+        underTest.setParticleRadiusRange(1.5f, 4.25f)
+
+        underTest.run()
+
+        verify(scene).setParticleRadiusRange(1.5f, 4.25f)
+    }
+
+    @Test
+    fun appliesNothingWhenNothingChanged() {
+        underTest.run()
+
+        verifyNoInteractions(scene)
+    }
+
+    @Test
+    fun appliesNothingWhenAppliedAlready() {
+        underTest.setDensity(1)
+        underTest.run()
+
+        underTest.run()
+
+        verify(scene).density = 1
+    }
+
+    @Test
+    fun specOverridesPendingChangesSetBeforeIt() {
+        val spec: SceneSpec = mock()
+        underTest.setDensity(1)
+        underTest.setLineColor(3)
+
+        assertFalse(underTest.apply(spec))
+        underTest.run()
+
+        verify(scene).apply(spec)
+        verify(scene, never()).density = any()
+        verify(scene, never()).lineColor = any()
+    }
+
+    @Test
+    fun changesSetAfterSpecOverrideIt() {
+        val spec: SceneSpec = mock()
+
+        assertTrue(underTest.apply(spec))
+        underTest.setDensity(1)
+        underTest.run()
+
+        val inOrder = inOrder(scene)
+        inOrder.verify(scene).apply(spec)
+        inOrder.verify(scene).density = 1
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+
+class GlProgramBinaryCacheTest {
+
+    @Test
+    fun parsesMajorVersion() {
+        assertEquals(2, GlProgramBinaryCache.parseMajorVersion("OpenGL ES 2.0 build 1.8@905891"))
+        assertEquals(3, GlProgramBinaryCache.parseMajorVersion("OpenGL ES 3.2 V@415.0"))
+        assertEquals(10, GlProgramBinaryCache.parseMajorVersion("OpenGL ES 10.0"))
+    }
+
+    @Test
+    fun parsesUnknownVersionAsZero() {
+        assertEquals(0, GlProgramBinaryCache.parseMajorVersion(null))
+        assertEquals(0, GlProgramBinaryCache.parseMajorVersion(""))
+        assertEquals(0, GlProgramBinaryCache.parseMajorVersion("OpenGL ES-CM 1.1"))
+    }
+
+    @Test
+    fun hashIsStableHex() {
+        val hash = GlProgramBinaryCache.hash("renderer", "version", "vs", "fs")
+
+        assertEquals(64, hash.length)
+        assertEquals(hash, GlProgramBinaryCache.hash("renderer", "version", "vs", "fs"))
+        assertEquals(hash, hash.filter { it in "0123456789abcdef" })
+    }
+
+    @Test
+    fun hashDependsOnPartBoundaries() {
+        assertNotEquals(
+            GlProgramBinaryCache.hash("ab", "c"),
+            GlProgramBinaryCache.hash("a", "bc")
+        )
+    }
+
+    @Test
+    fun hashDependsOnDriverVersion() {
+        assertNotEquals(
+            GlProgramBinaryCache.hash("renderer", "OpenGL ES 3.2 V@415.0", "vs", "fs"),
+            GlProgramBinaryCache.hash("renderer", "OpenGL ES 3.2 V@490.0", "vs", "fs")
+        )
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner::class)
+class GlResourceCacheTest {
+
+    private val underTest = GlResourceCache()
+
+    @Test
+    fun returnsZeroForMissingTexture() {
+        assertEquals(0, underTest.acquireTexture("key"))
+    }
+
+    @Test
+    fun returnsPutTexture() {
+        underTest.putTexture("key", 3)
+
+        assertEquals(3, underTest.acquireTexture("key"))
+    }
+
+    @Test
+    fun returnsExistingTextureWhenPutConcurrently() {
+        underTest.putTexture("key", 3)
+
+        assertEquals(3, underTest.putTexture("key", 4))
+    }
+
+    @Test
+    fun keepsTextureUntilLastReferenceReleased() {
+        underTest.putTexture("key", 3)
+        underTest.acquireTexture("key")
+
+        underTest.releaseTexture("key", 3)
+
+        assertEquals(3, underTest.acquireTexture("key"))
+    }
+
+    @Test
+    fun removesTextureWhenLastReferenceReleased() {
+        underTest.putTexture("key", 3)
+
+        underTest.releaseTexture("key", 3)
+
+        assertEquals(0, underTest.acquireTexture("key"))
+    }
+
+    @Test
+    fun ignoresReleaseOfClearedTexture() {
+        underTest.putTexture("key", 3)
+        underTest.clear()
+        underTest.putTexture("key", 5)
+
+        underTest.releaseTexture("key", 3)
+
+        assertEquals(5, underTest.acquireTexture("key"))
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer
+
+import com.doctoror.particlesdrawable.model.Scene
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.kotlin.mock
+
+class GlSceneRendererLinesTest {
+
+    @Test
+    fun resolvesMaxPositionScaleForSmallScene() {
+        val scene: Scene = mock {
+            on(it.width).thenReturn(320)
+            on(it.height).thenReturn(480)
+            on(it.particleRadiusMax).thenReturn(3f)
+            on(it.lineThickness).thenReturn(1f)
+            on(it.lineLength).thenReturn(86f)
+        }
+
+        assertEquals(16f, GlSceneRendererLines.resolvePositionScale(scene))
+    }
+
+    @Test
+    fun resolvesPositionScaleThatFitsLineLengthMargin() {
+        val scene: Scene = mock {
+            on(it.width).thenReturn(1080)
+            on(it.height).thenReturn(1920)
+            on(it.particleRadiusMax).thenReturn(9f)
+            on(it.lineThickness).thenReturn(3f)
+            on(it.lineLength).thenReturn(258f)
+        }
+
+        assertEquals(8f, GlSceneRendererLines.resolvePositionScale(scene))
+    }
+
+    @Test
+    fun packsParticlesWithinLineLengthMarginWithoutClamping() {
+        val lineLength = 258f
+        val radius = 9f
+        val height = 1920
+        val scene: Scene = mock {
+            on(it.width).thenReturn(1080)
+            on(it.height).thenReturn(height)
+            on(it.particleRadiusMax).thenReturn(radius)
+            on(it.lineThickness).thenReturn(3f)
+            on(it.lineLength).thenReturn(lineLength)
+        }
+
+        val scale = GlSceneRendererLines.resolvePositionScale(scene)
+
+        listOf(height + lineLength + radius, -lineLength - radius).forEach { value ->
+            val packed = LineVerticesResolver.packPosition(value, scale)
+            assertEquals(value, packed / scale, 1f / scale)
+        }
+    }
+
+    @Test
+    fun resolvesPositionScaleThatFitsShortRange() {
+        val scene: Scene = mock {
+            on(it.width).thenReturn(3840)
+            on(it.height).thenReturn(2160)
+            on(it.particleRadiusMax).thenReturn(3f)
+            on(it.lineThickness).thenReturn(1f)
+        }
+
+        assertEquals(8f, GlSceneRendererLines.resolvePositionScale(scene))
+    }
+
+    @Test
+    fun resolvesFractionalPositionScaleForHugeScene() {
+        val scene: Scene = mock {
+            on(it.width).thenReturn(100000)
+            on(it.height).thenReturn(10)
+        }
+
+        assertEquals(0.25f, GlSceneRendererLines.resolvePositionScale(scene))
+    }
+
+    @Test
+    fun resolvesQuadsToFitRoundedUpToPowerOfTwo() {
+        assertEquals(1, GlSceneRendererLines.resolveQuadsToFit(1, 1000))
+        assertEquals(4, GlSceneRendererLines.resolveQuadsToFit(3, 1000))
+        assertEquals(512, GlSceneRendererLines.resolveQuadsToFit(512, 1000))
+        assertEquals(1024, GlSceneRendererLines.resolveQuadsToFit(513, 5000))
+    }
+
+    @Test
+    fun resolvesQuadsToFitLimitedByCapacity() {
+        assertEquals(1000, GlSceneRendererLines.resolveQuadsToFit(513, 1000))
+        assertEquals(1000, GlSceneRendererLines.resolveQuadsToFit(1000, 1000))
+    }
+}
@@ -52,6 +52,66 @@ class GlSceneRendererTest {
         verify(particles).markTextureDirty()
     }
 
+    @Test
+    fun forwardsSetAnalyticParticleMotion() {
+        underTest.setAnalyticParticleMotion(true)
+        verify(particles).setAnalyticMotion(true)
+    }
+
+    @Test
+    fun forwardsSetTexturelessParticles() {
+        underTest.setTexturelessParticles(true)
+        verify(particles).setTextureless(true)
+    }
+
+    @Test
+    fun forwardsSetIndexedThickLines() {
+        underTest.setIndexedThickLines(true)
+        verify(lines).setIndexedThickLines(true)
+    }
+
+    @Test
+    fun forwardsSetShaderExpandedThickLines() {
+        underTest.setShaderExpandedThickLines(true)
+        verify(lines).setShaderExpandedThickLines(true)
+    }
+
+    @Test
+    fun forwardsSetAntialiasedLines() {
+        underTest.setAntialiasedLines(true)
+        verify(lines).setAntialiased(true)
+    }
+
+    @Test
+    fun forwardsSetParallelLineGeneration() {
+        underTest.setParallelLineGeneration(true)
+        verify(lines).setParallelLineGeneration(true)
+    }
+
+    @Test
+    fun recyclesParticles() {
+        underTest.recycle()
+        verify(particles).recycle()
+    }
+
+    @Test
+    fun recyclesLines() {
+        underTest.recycle()
+        verify(lines).recycle()
+    }
+
+    @Test
+    fun recyclesBackground() {
+        underTest.recycle()
+        verify(background).recycle()
+    }
+
+    @Test
+    fun releasesLineWorkersOnRecycle() {
+        underTest.recycle()
+        verify(lines).releaseWorkers()
+    }
+
     @Test
     fun setsBackgroundTexture() {
         val texture: Bitmap = mock()
@@ -75,11 +135,23 @@ class GlSceneRendererTest {
 
         val inOrder = inOrder(particles, background, lines)
         inOrder.verify(particles).markTextureDirty()
-        inOrder.verify(background).init(any())
-        inOrder.verify(lines).init()
+        inOrder.verify(background).init(any(), any())
+        inOrder.verify(lines).init(any())
         inOrder.verify(particles).init(any())
     }
 
+    @Test
+    fun initsWithSharedResourceCache() {
+        val resourceCache = GlResourceCache()
+        underTest.setResourceCache(resourceCache)
+
+        underTest.setupGl()
+
+        verify(background).init(any(), same(resourceCache))
+        verify(lines).init(same(resourceCache))
+        verify(particles).init(same(resourceCache))
+    }
+
     @Test
     fun setsDimensions() {
         val width = 56
@@ -101,4 +173,17 @@ class GlSceneRendererTest {
         inOrder.verify(lines).drawScene(eq(scene), any())
         inOrder.verify(particles).drawScene(eq(scene), any())
     }
+
+    @Test
+    fun drawsSceneInSharedContext() {
+        val scene: Scene = mock()
+        underTest.setSharedContext(true)
+
+        underTest.drawScene(scene)
+
+        val inOrder = inOrder(background, lines, particles)
+        inOrder.verify(background).drawScene(any())
+        inOrder.verify(lines).drawScene(eq(scene), any())
+        inOrder.verify(particles).drawScene(eq(scene), any())
+    }
 }
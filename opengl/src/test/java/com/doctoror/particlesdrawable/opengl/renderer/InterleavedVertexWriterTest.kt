@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class InterleavedVertexWriterTest {
+
+    private val bytes = ByteBuffer.allocate(8192).order(ByteOrder.nativeOrder())
+
+    private val underTest = InterleavedVertexWriter()
+
+    @Test
+    fun writesPositionAndColorInMemoryOrder() {
+        underTest.begin(bytes.asIntBuffer())
+        underTest.putVertex(
+            InterleavedVertexWriter.packPosition(-3, 1024),
+            InterleavedVertexWriter.packColor(0x04010203)
+        )
+        underTest.flush()
+
+        assertEquals(-3, bytes.getShort(0).toInt())
+        assertEquals(1024, bytes.getShort(2).toInt())
+        assertEquals(1, bytes.get(4).toInt())
+        assertEquals(2, bytes.get(5).toInt())
+        assertEquals(3, bytes.get(6).toInt())
+        assertEquals(4, bytes.get(7).toInt())
+    }
+
+    @Test
+    fun writesExpandedVertex() {
+        underTest.begin(bytes.asIntBuffer())
+        underTest.putVertex(
+            InterleavedVertexWriter.packPosition(1, 2),
+            InterleavedVertexWriter.packPosition(3, 4),
+            InterleavedVertexWriter.packColor(0xFFC80000.toInt())
+        )
+        underTest.flush()
+
+        assertEquals(1, bytes.getShort(0).toInt())
+        assertEquals(2, bytes.getShort(2).toInt())
+        assertEquals(3, bytes.getShort(4).toInt())
+        assertEquals(4, bytes.getShort(6).toInt())
+        assertEquals(200, bytes.get(8).toInt() and 0xFF)
+        assertEquals(255, bytes.get(11).toInt() and 0xFF)
+    }
+
+    @Test
+    fun doesNotWriteUntilFlushed() {
+        val target = bytes.asIntBuffer()
+        underTest.begin(target)
+        underTest.putVertex(1, 2)
+
+        assertEquals(0, target.position())
+
+        underTest.flush()
+
+        assertEquals(2, target.position())
+    }
+
+    @Test
+    fun flushesWhenScratchIsFull() {
+        val target = bytes.asIntBuffer()
+        underTest.begin(target)
+        for (i in 0 until 1000) {
+            underTest.putVertex(i, i)
+        }
+
+        assertEquals(1536, target.position())
+
+        underTest.flush()
+
+        assertEquals(2000, target.position())
+        assertEquals(999, target.get(1998))
+    }
+
+    @Test
+    fun growsStagingBeyondScratchSize() {
+        underTest.beginStaging()
+        for (i in 0 until 1000) {
+            underTest.putVertex(i, i)
+        }
+
+        assertEquals(2000, underTest.stagedWordsCount)
+
+        val target = bytes.asIntBuffer()
+        underTest.copyStagedTo(target)
+
+        assertEquals(2000, target.position())
+        assertEquals(999, target.get(1998))
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.renderer
+
+import com.doctoror.particlesdrawable.model.Scene
+import com.doctoror.particlesdrawable.util.LineColorTable
+import com.doctoror.particlesdrawable.util.ViewportCuller
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.mock
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.IntBuffer
+import java.util.Random
+
+class ParallelLineVerticesResolverTest {
+
+    private val underTest = ParallelLineVerticesResolver(3)
+
+    @After
+    fun tearDown() {
+        underTest.shutdown()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun throwsForZeroWorkers() {
+        ParallelLineVerticesResolver(0)
+    }
+
+    @Test
+    fun resolvesSlicesWithSimilarPairsCount() {
+        val sliceStarts = IntArray(4)
+
+        ParallelLineVerticesResolver.resolveSlices(100, sliceStarts)
+
+        // 4950 pairs in total, first particles have the most pairs
+        assertArrayEquals(intArrayOf(0, 19, 43, 100), sliceStarts)
+    }
+
+    @Test
+    fun resolvesEmptySlicesWhenParticlesAreFewerThanWorkers() {
+        val sliceStarts = IntArray(4)
+
+        ParallelLineVerticesResolver.resolveSlices(2, sliceStarts)
+
+        assertArrayEquals(intArrayOf(0, 1, 1, 2), sliceStarts)
+    }
+
+    @Test
+    fun resolvesSameVerticesAsSequentialThinLines() {
+        assertSameVerticesAsSequential(
+            lineAsTriangles = false,
+            lineAsIndexedQuads = false,
+            lineAsExpandedQuads = false
+        )
+    }
+
+    @Test
+    fun resolvesSameVerticesAsSequentialIndexedQuads() {
+        assertSameVerticesAsSequential(
+            lineAsTriangles = true,
+            lineAsIndexedQuads = true,
+            lineAsExpandedQuads = false
+        )
+    }
+
+    @Test
+    fun resolvesSameVerticesAsSequentialExpandedQuads() {
+        assertSameVerticesAsSequential(
+            lineAsTriangles = true,
+            lineAsIndexedQuads = true,
+            lineAsExpandedQuads = true
+        )
+    }
+
+    private fun assertSameVerticesAsSequential(
+        lineAsTriangles: Boolean,
+        lineAsIndexedQuads: Boolean,
+        lineAsExpandedQuads: Boolean
+    ) {
+        val scene = newScene()
+        val lineColorTable = LineColorTable()
+        lineColorTable.update(scene)
+        val viewportCuller = ViewportCuller()
+
+        val sequential = LineVerticesResolver()
+        sequential.configure(lineAsTriangles, lineAsIndexedQuads, lineAsExpandedQuads, 16f)
+        val expected = newTarget()
+        sequential.begin(expected)
+        sequential.resolve(scene, lineColorTable, viewportCuller, 0, scene.density)
+        sequential.finish()
+
+        val actual = newTarget()
+        val verticesCount = underTest.resolve(
+            scene,
+            lineColorTable,
+            viewportCuller,
+            actual,
+            lineAsTriangles,
+            lineAsIndexedQuads,
+            lineAsExpandedQuads,
+            16f
+        )
+
+        assertEquals(sequential.verticesCount, verticesCount)
+        assertEquals(expected.position(), actual.position())
+        for (i in 0 until expected.position()) {
+            assertEquals(expected.get(i), actual.get(i))
+        }
+    }
+
+    private fun newTarget(): IntBuffer = ByteBuffer
+        .allocate(1024 * 1024)
+        .order(ByteOrder.nativeOrder())
+        .asIntBuffer()
+
+    private fun newScene(): Scene {
+        val random = Random(1)
+        val coordinates = FloatArray(120) { random.nextFloat() * 500f }
+        return mock {
+            on(it.density).thenReturn(60)
+            on(it.lineLength).thenReturn(200f)
+            on(it.lineThickness).thenReturn(3f)
+            on(it.alpha).thenReturn(255)
+            on(it.getParticleX(any())).doAnswer { call -> coordinates[call.getArgument<Int>(0) * 2] }
+            on(it.getParticleY(any())).doAnswer { call -> coordinates[call.getArgument<Int>(0) * 2 + 1] }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.particlesdrawable.opengl.util
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TripleBufferTest {
+
+    private val first = Any()
+    private val second = Any()
+    private val third = Any()
+
+    private val underTest = TripleBuffer(first, second, third)
+
+    @Test
+    fun returnsNullWhenNothingPublished() {
+        assertNull(underTest.acquireReadItem())
+    }
+
+    @Test
+    fun returnsPublishedItem() {
+        val written = underTest.writeItem
+        underTest.publish()
+
+        assertSame(written, underTest.acquireReadItem())
+    }
+
+    @Test
+    fun switchesWriteItemOnPublish() {
+        val written = underTest.writeItem
+        underTest.publish()
+
+        assertTrue(written !== underTest.writeItem)
+    }
+
+    @Test
+    fun returnsLatestPublishedItem() {
+        underTest.publish()
+        val latest = underTest.writeItem
+        underTest.publish()
+
+        assertSame(latest, underTest.acquireReadItem())
+    }
+
+    @Test
+    fun returnsSameItemWhenNothingNewPublished() {
+        underTest.publish()
+        val read = underTest.acquireReadItem()
+
+        assertFalse(underTest.hasFreshItem())
+        assertSame(read, underTest.acquireReadItem())
+    }
+
+    @Test
+    fun neverWritesToReadItem() {
+        underTest.publish()
+        val read = underTest.acquireReadItem()
+
+        for (i in 0 until 8) {
+            assertTrue(read !== underTest.writeItem)
+            underTest.publish()
+        }
+    }
+}